@@ -43,11 +43,106 @@ public class RNRectangleScannerManager extends ViewGroupManager<MainView> {
         view.setCapturedQuality(quality);
     }
 
+    @ReactProp(name = "outputFormat")
+    public void setOutputFormat(MainView view, @Nullable String format) {
+        view.setOutputFormat(format);
+    }
+
+    @ReactProp(name = "outputLossless", defaultBoolean = false)
+    public void setOutputLossless(MainView view, Boolean lossless) {
+        view.setOutputLossless(lossless);
+    }
+
+    @ReactProp(name = "outputCompressionLevel", defaultInt = 1)
+    public void setOutputCompressionLevel(MainView view, int compressionLevel) {
+        view.setOutputCompressionLevel(compressionLevel);
+    }
+
+    @ReactProp(name = "outputGrayscale", defaultBoolean = false)
+    public void setOutputGrayscale(MainView view, Boolean grayscale) {
+        view.setOutputGrayscale(grayscale);
+    }
+
+    @ReactProp(name = "croppedImageMaxSize", defaultInt = 0)
+    public void setCroppedImageMaxSize(MainView view, int maxSize) {
+        view.setCroppedImageMaxSize(maxSize);
+    }
+
+    @ReactProp(name = "initialImageMaxSize", defaultInt = 0)
+    public void setInitialImageMaxSize(MainView view, int maxSize) {
+        view.setInitialImageMaxSize(maxSize);
+    }
+
     @ReactProp(name = "filterId", defaultInt = 1)
     public void setFilterId(MainView view, int filterId) {
         view.setFilterId(filterId);
     }
 
+    @ReactProp(name = "detectionResolution", defaultInt = 0)
+    public void setDetectionResolution(MainView view, int maxSize) {
+        view.setDetectionResolution(maxSize);
+    }
+
+    @ReactProp(name = "detectionFrameRate", defaultInt = 0)
+    public void setDetectionFrameRate(MainView view, int framesPerSecond) {
+        view.setDetectionFrameRate(framesPerSecond);
+    }
+
+    @ReactProp(name = "detectionThreads", defaultInt = 1)
+    public void setDetectionThreads(MainView view, int threadCount) {
+        view.setDetectionThreadCount(threadCount);
+    }
+
+    @ReactProp(name = "enableRectangleTracking", defaultBoolean = false)
+    public void setEnableRectangleTracking(MainView view, Boolean enabled) {
+        view.setRectangleTrackingEnabled(enabled);
+    }
+
+    @ReactProp(name = "enableRegionDetection", defaultBoolean = false)
+    public void setEnableRegionDetection(MainView view, Boolean enabled) {
+        view.setRegionDetectionEnabled(enabled);
+    }
+
+    @ReactProp(name = "contourRetrievalMode")
+    public void setContourRetrievalMode(MainView view, @Nullable String mode) {
+        view.setContourRetrievalMode(mode);
+    }
+
+    @ReactProp(name = "detectionEventThreshold", defaultDouble = 0)
+    public void setDetectionEventThreshold(MainView view, double threshold) {
+        view.setDetectionEventThreshold(threshold);
+    }
+
+    @ReactProp(name = "detectionEventHeartbeat", defaultInt = 0)
+    public void setDetectionEventHeartbeat(MainView view, int milliseconds) {
+        view.setDetectionEventHeartbeat(milliseconds);
+    }
+
+    @ReactProp(name = "autoCapture", defaultBoolean = false)
+    public void setAutoCapture(MainView view, Boolean enabled) {
+        view.setAutoCaptureEnabled(enabled);
+    }
+
+    @ReactProp(name = "autoCaptureFrameCount", defaultInt = 8)
+    public void setAutoCaptureFrameCount(MainView view, int frames) {
+        view.setAutoCaptureFrameCount(frames);
+    }
+
+    @ReactProp(name = "autoCaptureTolerance", defaultDouble = 10)
+    public void setAutoCaptureTolerance(MainView view, double pixels) {
+        view.setAutoCaptureTolerance(pixels);
+    }
+
+    @ReactProp(name = "minimumSharpness", defaultDouble = 0)
+    public void setMinimumSharpness(MainView view, double sharpness) {
+        view.setMinimumSharpness(sharpness);
+    }
+
+    @ReactProp(name = "pipelineMetricsInterval", defaultInt = 0)
+    public void setPipelineMetricsInterval(MainView view, int milliseconds) {
+        view.setPipelineMetricsInterval(milliseconds);
+    }
+
     // Life cycle Events
     @Override
     public @Nullable Map getExportedCustomDirectEventTypeConstants() {
@@ -62,6 +157,8 @@ public class RNRectangleScannerManager extends ViewGroupManager<MainView> {
 
             "onRectangleDetected", MapBuilder.of("registrationName", "onRectangleDetected"),
 
+            "onPipelineMetrics", MapBuilder.of("registrationName", "onPipelineMetrics"),
+
             "onTorchChanged", MapBuilder.of("registrationName", "onTorchChanged")
         );
     }
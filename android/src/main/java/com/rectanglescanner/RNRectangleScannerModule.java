@@ -1,9 +1,32 @@
 package com.rectanglescanner;
 
+import android.net.Uri;
+import android.util.Log;
+
+import com.rectanglescanner.core.BatchDocumentProcessor;
+import com.rectanglescanner.helpers.MatAllocationTracker;
+import com.rectanglescanner.helpers.PipelineMetrics;
 import com.rectanglescanner.views.MainView;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import org.opencv.android.OpenCVLoader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by Jake on Jan 6, 2020.
@@ -11,6 +34,11 @@ import com.facebook.react.bridge.ReactMethod;
 
 public class RNRectangleScannerModule extends ReactContextBaseJavaModule{
 
+    private static final String TAG = "RNRectangleScanner";
+    public static final String BATCH_RESULT_EVENT = "RNRectangleScannerBatchResult";
+    private static final String CACHE_FOLDER_NAME = "RNRectangleScanner";
+    private final Map<String, BatchDocumentProcessor> batches = new ConcurrentHashMap<>();
+
     public RNRectangleScannerModule(ReactApplicationContext reactContext){
         super(reactContext);
     }
@@ -56,4 +84,169 @@ public class RNRectangleScannerModule extends ReactContextBaseJavaModule{
         MainView view = MainView.getInstance();
         view.focusCamera();
     }
+
+    @ReactMethod
+    public void getMemoryUsage(Promise promise) {
+        promise.resolve(Arguments.fromBundle(MatAllocationTracker.getStats()));
+    }
+
+    @ReactMethod
+    public void resetMemoryUsageHighWaterMark() {
+        MatAllocationTracker.resetHighWaterMark();
+    }
+
+    @ReactMethod
+    public void getPipelineMetrics(Promise promise) {
+        promise.resolve(Arguments.fromBundle(PipelineMetrics.getStats()));
+    }
+
+    @ReactMethod
+    public void resetPipelineMetrics() {
+        PipelineMetrics.reset();
+    }
+
+    /**
+    Detects, crops, filters and saves the documents of images that are already
+    on the device, without the camera. Each result is emitted as a
+    RNRectangleScannerBatchResult event as soon as its image is done, and the
+    promise resolves once the whole batch is done.
+    */
+    @ReactMethod
+    public void processImages(ReadableArray uris, ReadableMap options, final Promise promise) {
+        if (!OpenCVLoader.initLocal()) {
+            promise.reject("E_OPENCV", "OpenCV initialization failed");
+            return;
+        }
+
+        File outputDirectory = new File(getReactApplicationContext().getCacheDir(), CACHE_FOLDER_NAME);
+        if (!outputDirectory.exists() && !outputDirectory.mkdirs()) {
+            promise.reject("E_CACHE_DIRECTORY", "Failed to create the cache directory");
+            return;
+        }
+
+        BatchDocumentProcessor.Options batchOptions = new BatchDocumentProcessor.Options();
+        batchOptions.outputDirectory = outputDirectory;
+        if (options.hasKey("filterId")) {
+            batchOptions.filterId = options.getInt("filterId");
+        }
+        if (options.hasKey("capturedQuality")) {
+            batchOptions.encoder.setQuality(options.getDouble("capturedQuality"));
+        }
+        if (options.hasKey("outputFormat")) {
+            batchOptions.encoder.setFormat(options.getString("outputFormat"));
+        }
+        if (options.hasKey("outputLossless")) {
+            batchOptions.encoder.setLossless(options.getBoolean("outputLossless"));
+        }
+        if (options.hasKey("outputCompressionLevel")) {
+            batchOptions.encoder.setCompressionLevel(options.getInt("outputCompressionLevel"));
+        }
+        if (options.hasKey("outputGrayscale")) {
+            batchOptions.encoder.setGrayscale(options.getBoolean("outputGrayscale"));
+        }
+        if (options.hasKey("detectionResolution")) {
+            batchOptions.detectionResolution = options.getInt("detectionResolution");
+        }
+        if (options.hasKey("parallelism")) {
+            batchOptions.parallelism = options.getInt("parallelism");
+        }
+
+        final String batchId = options.hasKey("batchId") ? options.getString("batchId") : UUID.randomUUID().toString();
+        final List<String> inputUris = new ArrayList<>();
+        final List<String> inputPaths = new ArrayList<>();
+        for (int i = 0; i < uris.size(); i++) {
+            String uri = uris.getString(i);
+            inputUris.add(uri);
+            inputPaths.add(getFilePath(uri));
+        }
+
+        final BatchDocumentProcessor processor = new BatchDocumentProcessor(batchOptions);
+        this.batches.put(batchId, processor);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final AtomicInteger failedCount = new AtomicInteger();
+                try {
+                    int count = processor.process(inputPaths, new BatchDocumentProcessor.Listener() {
+                        @Override
+                        public void onResult(BatchDocumentProcessor.Result result) {
+                            if (result.error != null) {
+                                Log.d(TAG, "Failed to process " + result.inputPath + ": " + result.error);
+                                failedCount.incrementAndGet();
+                            }
+                            batchImageWasProcessed(batchId, inputUris.get(result.index), result);
+                        }
+                    });
+
+                    WritableMap summary = Arguments.createMap();
+                    summary.putString("batchId", batchId);
+                    summary.putInt("count", count);
+                    summary.putInt("failedCount", failedCount.get());
+                    summary.putBoolean("cancelled", count < inputPaths.size());
+                    promise.resolve(summary);
+                } catch (InterruptedException e) {
+                    promise.reject("E_BATCH_INTERRUPTED", "The batch was interrupted", e);
+                } finally {
+                    batches.remove(batchId);
+                }
+            }
+        }, "Batch Processing Thread").start();
+    }
+
+    /**
+    Stops a batch from starting more images. Images already being processed
+    still finish and send their results.
+    */
+    @ReactMethod
+    public void cancelProcessImages(String batchId) {
+        BatchDocumentProcessor processor = this.batches.get(batchId);
+        if (processor != null) {
+            processor.cancel();
+        }
+    }
+
+    /**
+    Sends the result of one image of a batch to JS
+    */
+    private void batchImageWasProcessed(String batchId, String inputUri, BatchDocumentProcessor.Result result) {
+        WritableMap event = Arguments.createMap();
+        event.putString("batchId", batchId);
+        event.putInt("index", result.index);
+        event.putString("initialImage", inputUri);
+        if (result.outputPath != null) {
+            event.putString("croppedImage", "file://" + result.outputPath);
+        } else {
+            event.putNull("croppedImage");
+        }
+        if (result.corners != null) {
+            WritableArray corners = Arguments.createArray();
+            for (double value : result.corners) {
+                corners.pushDouble(value);
+            }
+            event.putArray("corners", corners);
+        } else {
+            event.putNull("corners");
+        }
+        event.putDouble("width", result.width);
+        event.putDouble("height", result.height);
+        if (result.error != null) {
+            event.putString("error", String.valueOf(result.error.getMessage()));
+        } else {
+            event.putNull("error");
+        }
+
+        getReactApplicationContext()
+            .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+            .emit(BATCH_RESULT_EVENT, event);
+    }
+
+    /**
+    Returns the file path of a file:// uri, other strings are used as paths
+    */
+    private static String getFilePath(String uri) {
+        if (uri != null && uri.startsWith("file://")) {
+            return Uri.parse(uri).getPath();
+        }
+        return uri;
+    }
 }
@@ -0,0 +1,213 @@
+package com.rectanglescanner.helpers;
+
+import android.util.Log;
+import android.view.Surface;
+
+import com.rectanglescanner.core.DocumentWarper;
+import com.rectanglescanner.core.ImageFilters;
+import com.rectanglescanner.core.QuadGeometry;
+import com.rectanglescanner.core.RectangleDetector;
+import com.rectanglescanner.views.RectangleDetectionController;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+  Decodes, crops, fixes the perspective and applies filters to captured images.
+  Captures run on their own executor and queue, so they never wait behind
+  preview frames and preview detection keeps running while an image is processed.
+ */
+public class CaptureProcessor {
+
+    private static final String TAG = "CaptureProcessor";
+    private final RectangleDetectionController mMainActivity;
+    // The idle capture thread is stopped after this long
+    private static final long CAPTURE_KEEP_ALIVE_SECONDS = 30;
+    private final ThreadPoolExecutor executor;
+
+    public CaptureProcessor(RectangleDetectionController mainActivity) {
+        this.mMainActivity = mainActivity;
+        this.executor = new ThreadPoolExecutor(1, 1,
+            CAPTURE_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "Capture Thread");
+                }
+            });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+    Queues a captured JPEG to be processed. The detected rectangle, filter,
+    rotation and max sizes are the ones from the moment the image was captured.
+    @param croppedMaxSize max length of the longest edge of the cropped image, 0 keeps the full size
+    @param initialMaxSize max length of the longest edge of the initial image, 0 keeps the full size
+    */
+    public void processCapturedImageLater(final byte[] jpegData, final Quadrilateral rectangle, final int filterId, final int rotation,
+        final int croppedMaxSize, final int initialMaxSize) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long startTime = PipelineMetrics.start();
+                    int decodeSize = getCapturedImageDecodeSize(rectangle, rotation, croppedMaxSize, initialMaxSize);
+                    Mat capturedImage = downscale(mMainActivity.decodeCapturedImage(jpegData, decodeSize), decodeSize);
+                    PipelineMetrics.record(PipelineMetrics.DECODE_CAPTURE, startTime);
+                    processCapturedImage(capturedImage, rectangle, filterId, rotation, croppedMaxSize, initialMaxSize);
+                    PipelineMetrics.record(PipelineMetrics.PROCESS_CAPTURE, startTime);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error processing captured image", e);
+                    mMainActivity.capturedImageDidFailToProcess(e);
+                }
+            }
+        });
+    }
+
+    /**
+    Process a single captured image
+    */
+    private void processCapturedImage(Mat capturedImage, Quadrilateral rectangle, int filterId, int rotation,
+        int croppedMaxSize, int initialMaxSize) {
+        Log.d(TAG, "processCapturedImage - imported image " + capturedImage.size().width + "x" + capturedImage.size().height);
+
+        // The captured image belongs to the CapturedImage from here on, which
+        // belongs to the controller once it is handed over
+        CapturedImage doc = null;
+        try {
+            doc = cropImageToLatestQuadrilateral(capturedImage, rectangle, filterId, rotation, croppedMaxSize, initialMaxSize);
+        } finally {
+            if (doc == null) {
+                MatAllocationTracker.release(capturedImage);
+            }
+        }
+        mMainActivity.onProcessedCapturedImage(doc);
+    }
+
+    /**
+    Crops the image to the rectangle detected when the image was captured and
+    fixes perspective. The image is never rotated here: the document comes
+    out of the warp upright and the original keeps the camera's orientation,
+    with the rotation for the screen applied when it is encoded. The warp
+    writes the document at its max size and the original is scaled down to its
+    max size.
+    */
+    private CapturedImage cropImageToLatestQuadrilateral(Mat capturedImage, Quadrilateral rectangle, int filterId, int rotation,
+        int croppedMaxSize, int initialMaxSize) {
+        long startTime = PipelineMetrics.start();
+        ImageFilters.applyFilters(capturedImage, filterId);
+        PipelineMetrics.record(PipelineMetrics.APPLY_FILTERS, startTime);
+
+        Mat doc = null;
+        if (rectangle != null) {
+            double[] corners = getCornersInCapturedImage(rectangle, capturedImage.size(), rotation);
+            startTime = PipelineMetrics.start();
+            doc = MatAllocationTracker.track(DocumentWarper.fourPointTransform(capturedImage, corners, croppedMaxSize));
+            PipelineMetrics.record(PipelineMetrics.WARP_PERSPECTIVE, startTime);
+        }
+        // The original was only kept larger than its max size for the crop
+        capturedImage = downscale(capturedImage, initialMaxSize);
+
+        CapturedImage sd = new CapturedImage(capturedImage);
+        sd.originalRotation = getScreenRotateCode(rotation);
+
+        sd.originalSize = RectangleDetector.getSizeForScreen(capturedImage.size(), rotation);
+        sd.heightWithRatio = Double.valueOf(sd.originalSize.height).intValue();
+        sd.widthWithRatio = Double.valueOf(sd.originalSize.width).intValue();
+        return sd.setProcessed(doc);
+    }
+
+    /**
+    Returns the corners of the rectangle in the captured image. The rectangle
+    was detected on the screen, which shows the middle of the image cropped to
+    the preview's aspect ratio, so the corners are placed in that crop of the
+    image rotated for the screen and then rotated back to the camera's orientation.
+    */
+    private double[] getCornersInCapturedImage(Quadrilateral rectangle, Size imageSize, int rotation) {
+        Size screenSize = RectangleDetector.getSizeForScreen(imageSize, rotation);
+        Rect crop = rectangle.getRectangleSizeCrop(screenSize);
+        double[] corners = rectangle.getCornersForSize(crop.size());
+        for (int i = 0; i < 4; i++) {
+            corners[i * 2] += crop.x;
+            corners[i * 2 + 1] += crop.y;
+        }
+        QuadGeometry.rotateFromScreen(corners, 4, imageSize.width, imageSize.height, rotation);
+        return corners;
+    }
+
+    /**
+    Returns the longest edge the captured image is needed at so that neither
+    the initial nor the cropped image ends up smaller than its max size, or 0
+    for the full size. The cropped image needs the image at the size where the
+    document detected on the screen is as large as its max size.
+    */
+    private int getCapturedImageDecodeSize(Quadrilateral rectangle, int rotation, int croppedMaxSize, int initialMaxSize) {
+        if (initialMaxSize <= 0) {
+            return 0;
+        }
+        if (rectangle == null) {
+            return initialMaxSize;
+        }
+
+        Size pictureSize = mMainActivity.getPictureSize();
+        if (croppedMaxSize <= 0 || pictureSize.area() == 0) {
+            return 0;
+        }
+        Size docSize = DocumentWarper.getDocumentSize(getCornersInCapturedImage(rectangle, pictureSize, rotation));
+        double docLongestEdge = Math.max(docSize.width, docSize.height);
+        if (docLongestEdge < 1) {
+            return 0;
+        }
+        double pictureLongestEdge = Math.max(pictureSize.width, pictureSize.height);
+        int croppedDecodeSize = (int) Math.ceil(croppedMaxSize * pictureLongestEdge / docLongestEdge);
+        return Math.max(initialMaxSize, croppedDecodeSize);
+    }
+
+    /**
+    Scales the image down so its longest edge is at most maxSize, releasing the
+    image if it is replaced. 0 keeps the image as it is.
+    */
+    private Mat downscale(Mat image, int maxSize) {
+        double scale = RectangleDetector.getDetectionScale(image.size(), maxSize);
+        if (scale >= 1) {
+            return image;
+        }
+
+        int rows = (int) Math.max(1, Math.round(image.rows() * scale));
+        int cols = (int) Math.max(1, Math.round(image.cols() * scale));
+        Mat scaled = MatAllocationTracker.create(rows, cols, image.type());
+        Imgproc.resize(image, scaled, scaled.size(), 0, 0, Imgproc.INTER_AREA);
+        MatAllocationTracker.release(image);
+        return scaled;
+    }
+
+    /**
+    Returns the Core.rotate code that turns an image to match the screen, or
+    CapturedImage.NO_ROTATION
+    */
+    public static int getScreenRotateCode(int rotation) {
+      switch (rotation) {
+        case Surface.ROTATION_90: {
+          return CapturedImage.NO_ROTATION;
+        }
+        case Surface.ROTATION_180: {
+          return Core.ROTATE_90_COUNTERCLOCKWISE;
+        }
+        case Surface.ROTATION_270: {
+          return Core.ROTATE_180;
+        }
+        case Surface.ROTATION_0:
+        default: {
+          return Core.ROTATE_90_CLOCKWISE;
+        }
+      }
+    }
+}
@@ -9,7 +9,12 @@ import org.opencv.core.Size;
  */
 public class CapturedImage {
 
+    public static final int NO_ROTATION = -1;
+
     public Mat original;
+    // The Core.rotate code that turns the original to match the screen, or NO_ROTATION
+    public int originalRotation = NO_ROTATION;
+    // The cropped document, upright, or null if no rectangle was detected
     public Mat processed;
     public Point[] previewPoints;
     public Size previewSize;
@@ -34,11 +39,7 @@ public class CapturedImage {
     }
 
     public void release() {
-        if (processed != null) {
-            processed.release();
-        }
-        if (original != null) {
-            original.release();
-        }
+        MatAllocationTracker.release(processed);
+        MatAllocationTracker.release(original);
     }
 }
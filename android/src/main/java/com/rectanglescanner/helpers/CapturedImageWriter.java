@@ -0,0 +1,102 @@
+package com.rectanglescanner.helpers;
+
+import android.util.Log;
+
+import com.rectanglescanner.core.ImageEncoder;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+  Encodes and writes captured images to files on its own threads, so the
+  capture thread can move on to the next capture. The cropped and original
+  images of a capture are written in parallel, and each is reported as soon
+  as its file is written.
+ */
+public class CapturedImageWriter {
+
+    /**
+    Receives the outcome of a written image, on the writer thread
+    */
+    public interface Callback {
+        void imageWasWritten(String filePath);
+        void imageDidFailToWrite(String filePath);
+    }
+
+    private static final String TAG = "CapturedImageWriter";
+    private static final int WRITER_THREADS = 2;
+    // Idle writer threads are stopped after this long
+    private static final long WRITER_KEEP_ALIVE_SECONDS = 30;
+    private final ThreadPoolExecutor executor;
+
+    public CapturedImageWriter() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(WRITER_THREADS, WRITER_THREADS,
+            WRITER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "Image Writer Thread " + threadCount.incrementAndGet());
+                }
+            });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+    Queues an image to be written. The writer owns the image from here on and
+    releases it once it is written.
+    @param rotateCode the Core.rotate code applied while encoding, or CapturedImage.NO_ROTATION
+    @param encoder the format the image is encoded in, which must not change until it is written
+    */
+    public void writeLater(final Mat image, final int rotateCode, final String filePath, final ImageEncoder encoder, final Callback callback) {
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean success = false;
+                try {
+                    long startTime = PipelineMetrics.start();
+                    success = write(image, rotateCode, filePath, encoder);
+                    PipelineMetrics.record(PipelineMetrics.ENCODE_IMAGES, startTime);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error writing captured image", e);
+                } finally {
+                    MatAllocationTracker.release(image);
+                }
+
+                if (success) {
+                    callback.imageWasWritten(filePath);
+                } else {
+                    callback.imageDidFailToWrite(filePath);
+                }
+            }
+        });
+    }
+
+    /**
+    Encodes the image to the file. A rotated image is rotated straight into
+    the buffer that is encoded and the source is released before encoding.
+    */
+    private boolean write(Mat image, int rotateCode, String filePath, ImageEncoder encoder) {
+        Mat output = image;
+        if (rotateCode != CapturedImage.NO_ROTATION) {
+            boolean swapsSides = rotateCode != Core.ROTATE_180;
+            int rows = swapsSides ? image.cols() : image.rows();
+            int cols = swapsSides ? image.rows() : image.cols();
+            output = MatAllocationTracker.create(rows, cols, image.type());
+            Core.rotate(image, output, rotateCode);
+            MatAllocationTracker.release(image);
+        }
+
+        boolean success = encoder.write(filePath, output);
+        if (output != image) {
+            MatAllocationTracker.release(output);
+        }
+        return success;
+    }
+}
@@ -8,49 +8,71 @@ import android.os.Message;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
+import com.rectanglescanner.core.ContourSelector;
+import com.rectanglescanner.core.PreviewFrameScheduler;
+import com.rectanglescanner.core.QuadGeometry;
+import com.rectanglescanner.core.RectangleDetector;
 import com.rectanglescanner.views.RectangleDetectionController;
 import com.rectanglescanner.helpers.ImageProcessorMessage;
 import com.rectanglescanner.helpers.Quadrilateral;
-import com.rectanglescanner.helpers.CapturedImage;
 
-import android.view.Surface;
-
-import org.opencv.core.Core;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
-import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
+import org.opencv.core.Rect;
 import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
-import org.opencv.imgproc.Imgproc;
 
-import android.os.Bundle;
+import android.os.Build;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-
-import com.facebook.react.bridge.Arguments;
 
 /**
   Created by Jake on Jan 6, 2020.
 
-  Async processes either the image preview frame to detect rectangles, or
-  the captured image to crop and apply filters.
+  Async processes the image preview frames to detect rectangles. Captured
+  images are processed by the CaptureProcessor. The detection itself is done
+  by the RectangleDetector of the core module.
  */
 public class ImageProcessor extends Handler {
 
     private static final String TAG = "ImageProcessor";
     private final RectangleDetectionController mMainActivity;
-    private Quadrilateral lastDetectedRectangle = null;
-
-    public ImageProcessor(Looper looper, RectangleDetectionController mainActivity, Context context) {
+    private final PreviewFrameScheduler<ImageProcessor> mFrameScheduler;
+    // Padding around the last rectangle searched by region detection, as a
+    // ratio of the rectangle's longest side
+    private static final double DETECTION_REGION_PADDING = 0.15;
+    private static final int DETECTION_REGION_GRID = 32;
+    private final PreviewFrameScheduler.FrameTicket frameTicket = new PreviewFrameScheduler.FrameTicket();
+    private final RectangleDetector detector;
+    // Reused for every rectangle checked on this processor's thread
+    private final double[] trackedPoints = new double[8];
+    private final double[] candidateCorners = new double[8];
+
+    public ImageProcessor(Looper looper, RectangleDetectionController mainActivity, PreviewFrameScheduler<ImageProcessor> frameScheduler, Context context) {
         super(looper);
         this.mMainActivity = mainActivity;
+        this.mFrameScheduler = frameScheduler;
+        this.detector = new RectangleDetector(mainActivity.getMatPool());
         SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(context);
     }
 
+    /**
+    Releases the detector's buffers and stops the thread once the frames that
+    were already sent to this processor are done
+    */
+    public void quit() {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                detector.release();
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                    getLooper().quitSafely();
+                } else {
+                    getLooper().quit();
+                }
+            }
+        });
+    }
+
     /**
     Receives an event message to handle async
     */
@@ -61,329 +83,239 @@ public class ImageProcessor extends Handler {
 
             String command = obj.getCommand();
 
-            Log.d(TAG, "Message Received: " + command + " - " + obj.getObj().toString());
             if (command.equals("previewFrame")) {
-                processPreviewFrame((Mat) obj.getObj());
-            } else if (command.equals("pictureTaken")) {
-                processCapturedImage((Mat) obj.getObj());
+                processPreviewFrame();
             }
         }
     }
 
     /**
-    Detect a rectangle in the current frame from the camera video
+    Detect a rectangle in the frame waiting in the frame scheduler
     */
-    private void processPreviewFrame(Mat frame) {
-      rotateImageForScreen(frame);
-      detectRectangleInFrame(frame);
-      frame.release();
-      mMainActivity.setImageProcessorBusy(false);
+    private void processPreviewFrame() {
+      long frameNumber = -1;
+      try {
+        if (mFrameScheduler.takeFrame(this.frameTicket)) {
+          frameNumber = this.frameTicket.frameNumber;
+          long startTime = PipelineMetrics.start();
+          byte[] data = this.frameTicket.data;
+          this.frameTicket.data = null;
+
+          MatPool matPool = mMainActivity.getMatPool();
+          Mat frame;
+          try {
+            frame = mMainActivity.convertPreviewFrame(data);
+          } finally {
+            // The camera only has a few callback buffers, a lost one stalls the preview
+            mMainActivity.releasePreviewBuffer(data);
+          }
+
+          try {
+            detectRectangleInFrame(frame, frameNumber, mMainActivity.lastDetectedRotation);
+          } finally {
+            matPool.release(frame);
+          }
+          PipelineMetrics.record(PipelineMetrics.PROCESS_FRAME, startTime);
+        }
+      } catch (Exception e) {
+        Log.e(TAG, "Error processing preview frame", e);
+        if (frameNumber >= 0) {
+          // Later frames are sent in order after this one
+          mMainActivity.frameWasLost(frameNumber);
+        }
+      } finally {
+        mMainActivity.previewFrameWasProcessed(this);
+      }
     }
 
     /**
-    Process a single frame from the camera video
+    Detects a rectangle from the image and hands it to the controller which
+    sets the last detected rectangle. The frame is in the camera sensor's
+    orientation, only the corners of the rectangle are rotated to match the screen.
+    Frames that are not as sharp as the minimum sharpness are skipped.
     */
-    private void processCapturedImage(Mat capturedImage) {
-        // Mat capturedImage = Imgcodecs.imdecode(picture, Imgcodecs.IMREAD_UNCHANGED);
-        // picture.release();
-
-        Log.d(TAG, "processCapturedImage - imported image " + capturedImage.size().width + "x" + capturedImage.size().height);
-
-        rotateImageForScreen(capturedImage);
-
-        CapturedImage doc = cropImageToLatestQuadrilateral(capturedImage);
-
-        mMainActivity.onProcessedCapturedImage(doc);
-        doc.release();
-        capturedImage.release();
+    private void detectRectangleInFrame(Mat frame, long frameNumber, int rotation) {
+        MatPool matPool = mMainActivity.getMatPool();
+        Size srcSize = frame.size();
+        double detectionScale = RectangleDetector.getDetectionScale(srcSize, mMainActivity.getDetectionResolution());
+        Size size = new Size(Math.round(srcSize.width * detectionScale), Math.round(srcSize.height * detectionScale));
+        Mat grayImage = this.detector.getGrayImage(frame, size);
+
+        try {
+            long startTime = PipelineMetrics.start();
+            double sharpness = this.detector.measureSharpness(grayImage);
+            PipelineMetrics.record(PipelineMetrics.MEASURE_SHARPNESS, startTime);
+            if (sharpness < mMainActivity.getMinimumSharpness()) {
+                mMainActivity.blurryFrameWasSkipped(frameNumber);
+                return;
+            }
 
-        mMainActivity.setImageProcessorBusy(false);
+            Quadrilateral rectangle;
+            if (mMainActivity.isRectangleTrackingEnabled()) {
+                rectangle = trackRectangleInFrame(grayImage, srcSize, frameNumber, rotation, detectionScale);
+            } else {
+                rectangle = detectRectangle(grayImage, srcSize, detectionScale, rotation);
+            }
+            mMainActivity.rectangleWasDetectedInFrame(frameNumber, rectangle, sharpness);
+        } finally {
+            if (grayImage != frame) {
+                matPool.release(grayImage);
+            }
+        }
     }
 
     /**
-    Detects a rectangle from the image and sets the last detected rectangle
+    Runs the full contour detection on the greyscale detection image. With
+    region detection enabled, the area around the last detected rectangle is
+    searched first and the whole image is only searched if no rectangle is
+    found there.
     */
-    private void detectRectangleInFrame(Mat inputRgba) {
-        ArrayList<MatOfPoint> contours = findContours(inputRgba);
-        Size srcSize = inputRgba.size();
-        this.lastDetectedRectangle = getQuadrilateral(contours, srcSize);
-        Bundle data = new Bundle();
-        if (this.lastDetectedRectangle != null) {
-          Bundle quadMap = this.lastDetectedRectangle.toBundle();
-          data.putBundle("detectedRectangle", quadMap);
-        } else {
-          data.putBoolean("detectedRectangle", false);
+    private Quadrilateral detectRectangle(Mat grayImage, Size srcSize, double detectionScale, int rotation) {
+        double minArea = RectangleDetector.getMinimumContourArea(grayImage.size(), rotation);
+        this.detector.setRetrievalMode(mMainActivity.getContourRetrievalMode());
+        if (mMainActivity.isRegionDetectionEnabled()) {
+            Rect region = getDetectionRegion(mMainActivity.getLastDetectedRectangle(), grayImage.size(), srcSize, detectionScale, rotation);
+            if (region != null) {
+                // A sub-matrix of the image, nothing is copied
+                Mat regionImage = grayImage.submat(region);
+                ArrayList<MatOfPoint> contours = findContours(regionImage, new Point(region.x, region.y), minArea);
+                regionImage.release();
+
+                Quadrilateral rectangle = getQuadrilateral(contours, grayImage.size(), srcSize, detectionScale, rotation);
+                if (rectangle != null) {
+                    return rectangle;
+                }
+            }
         }
 
-        mMainActivity.rectangleWasDetected(Arguments.fromBundle(data));
+        ArrayList<MatOfPoint> contours = findContours(grayImage, new Point(0, 0), minArea);
+        return getQuadrilateral(contours, grayImage.size(), srcSize, detectionScale, rotation);
     }
 
     /**
-    Crops the image to the latest detected rectangle and fixes perspective
+    Returns the padded bounding box of the rectangle in the detection image, or
+    null if there is no rectangle or the box covers the whole image. The box is
+    snapped to a grid so the pooled Mats of the detection can be reused between frames.
     */
-    private CapturedImage cropImageToLatestQuadrilateral(Mat capturedImage) {
-        applyFilters(capturedImage);
-
-        Mat doc;
-        if (this.lastDetectedRectangle != null) {
-            Mat croppedCapturedImage = this.lastDetectedRectangle.cropImageToRectangleSize(capturedImage);
-            doc = fourPointTransform(croppedCapturedImage, this.lastDetectedRectangle.getPointsForSize(croppedCapturedImage.size()));
-            croppedCapturedImage.release();
-        } else {
-            doc = new Mat(capturedImage.size(), CvType.CV_8UC4);
-            capturedImage.copyTo(doc);
+    private Rect getDetectionRegion(Quadrilateral rectangle, Size size, Size srcSize, double detectionScale, int rotation) {
+        if (rectangle == null) {
+            return null;
+        }
+        Size screenSize = RectangleDetector.getSizeForScreen(srcSize, rotation);
+        if (rectangle.sourceSize.width != screenSize.width || rectangle.sourceSize.height != screenSize.height) {
+            // Detected before the screen rotated or the preview size changed
+            return null;
         }
 
-        Core.flip(doc.t(), doc, 0);
-        Core.flip(capturedImage.t(), capturedImage, 0);
-        CapturedImage sd = new CapturedImage(capturedImage);
-
-        sd.originalSize = capturedImage.size();
-        sd.heightWithRatio = Double.valueOf(sd.originalSize.width).intValue();
-        sd.widthWithRatio = Double.valueOf(sd.originalSize.height).intValue();
-        return sd.setProcessed(doc);
-    }
-
-    private Quadrilateral getQuadrilateral(ArrayList<MatOfPoint> contours, Size srcSize) {
-
-        int height = Double.valueOf(srcSize.height).intValue();
-        int width = Double.valueOf(srcSize.width).intValue();
-        Size size = new Size(width, height);
-
-        Log.i(TAG, "Size----->" + size);
-        for (MatOfPoint c : contours) {
-            MatOfPoint2f c2f = new MatOfPoint2f(c.toArray());
-            double peri = Imgproc.arcLength(c2f, true);
-            MatOfPoint2f approx = new MatOfPoint2f();
-            Imgproc.approxPolyDP(c2f, approx, 0.02 * peri, true);
-
-            Point[] points = approx.toArray();
-
-            // select biggest 4 angles polygon
-            // if (points.length == 4) {
-            Point[] foundPoints = sortPoints(points);
+        double[] corners = getSourceCorners(rectangle, size, detectionScale, rotation);
+        double minX = QuadGeometry.x(corners, 0);
+        double maxX = minX;
+        double minY = QuadGeometry.y(corners, 0);
+        double maxY = minY;
+        for (int i = 1; i < 4; i++) {
+            minX = Math.min(minX, QuadGeometry.x(corners, i));
+            maxX = Math.max(maxX, QuadGeometry.x(corners, i));
+            minY = Math.min(minY, QuadGeometry.y(corners, i));
+            maxY = Math.max(maxY, QuadGeometry.y(corners, i));
+        }
 
-            if (insideArea(foundPoints, size)) {
+        double padding = Math.max(maxX - minX, maxY - minY) * DETECTION_REGION_PADDING;
+        int x0 = Math.max(0, (int) Math.floor((minX - padding) / DETECTION_REGION_GRID) * DETECTION_REGION_GRID);
+        int y0 = Math.max(0, (int) Math.floor((minY - padding) / DETECTION_REGION_GRID) * DETECTION_REGION_GRID);
+        int x1 = Math.min((int) size.width, (int) Math.ceil((maxX + padding) / DETECTION_REGION_GRID) * DETECTION_REGION_GRID);
+        int y1 = Math.min((int) size.height, (int) Math.ceil((maxY + padding) / DETECTION_REGION_GRID) * DETECTION_REGION_GRID);
 
-                return new Quadrilateral(c, foundPoints, new Size(srcSize.width, srcSize.height));
-            }
-            // }
+        if (x1 <= x0 || y1 <= y0 || (x0 == 0 && y0 == 0 && x1 == (int) size.width && y1 == (int) size.height)) {
+            return null;
         }
-
-        return null;
+        return new Rect(x0, y0, x1 - x0, y1 - y0);
     }
 
-    private Point[] sortPoints(Point[] src) {
-
-        ArrayList<Point> srcPoints = new ArrayList<>(Arrays.asList(src));
-
-        Point[] result = { null, null, null, null };
-
-        Comparator<Point> sumComparator = new Comparator<Point>() {
-            @Override
-            public int compare(Point lhs, Point rhs) {
-                return Double.compare(lhs.y + lhs.x, rhs.y + rhs.x);
-            }
-        };
-
-        Comparator<Point> diffComparator = new Comparator<Point>() {
-
-            @Override
-            public int compare(Point lhs, Point rhs) {
-                return Double.compare(lhs.y - lhs.x, rhs.y - rhs.x);
+    /**
+    Follows the last rectangle into this frame with the quad tracker. Falls back
+    to a full detection when tracking is lost or a full detection is due, and
+    locks the tracker onto the rectangle it finds.
+    */
+    private Quadrilateral trackRectangleInFrame(Mat grayImage, Size srcSize, long frameNumber, int rotation, double detectionScale) {
+        QuadTracker tracker = mMainActivity.getQuadTracker();
+        Size size = grayImage.size();
+
+        Quadrilateral rectangle = null;
+        if (tracker.shouldTrack()) {
+            long startTime = PipelineMetrics.start();
+            boolean tracked = tracker.track(grayImage, frameNumber, this.trackedPoints);
+            PipelineMetrics.record(PipelineMetrics.TRACK_RECTANGLE, startTime);
+            if (tracked) {
+                if (this.detector.getScreenCorners(this.trackedPoints, 4, size, rotation, this.candidateCorners)) {
+                    rectangle = toQuadrilateral(null, this.candidateCorners, srcSize, detectionScale, rotation);
+                } else {
+                    tracker.reset(frameNumber);
+                }
             }
-        };
-
-        // top-left corner = minimal sum
-        result[0] = Collections.min(srcPoints, sumComparator);
-
-        // bottom-right corner = maximal sum
-        result[2] = Collections.max(srcPoints, sumComparator);
-
-        // top-right corner = minimal difference
-        result[1] = Collections.min(srcPoints, diffComparator);
-
-        // bottom-left corner = maximal difference
-        result[3] = Collections.max(srcPoints, diffComparator);
-
-        return result;
-    }
-
-    private boolean insideArea(Point[] rp, Size size) {
-
-        int width = Double.valueOf(size.width).intValue();
-        int height = Double.valueOf(size.height).intValue();
-
-        int minimumSize = width / 10;
-
-        boolean isANormalShape = rp[0].x != rp[1].x && rp[1].y != rp[0].y && rp[2].y != rp[3].y && rp[3].x != rp[2].x;
-        boolean isBigEnough = ((rp[1].x - rp[0].x >= minimumSize) && (rp[2].x - rp[3].x >= minimumSize)
-                && (rp[3].y - rp[0].y >= minimumSize) && (rp[2].y - rp[1].y >= minimumSize));
-
-        double leftOffset = rp[0].x - rp[3].x;
-        double rightOffset = rp[1].x - rp[2].x;
-        double bottomOffset = rp[0].y - rp[1].y;
-        double topOffset = rp[2].y - rp[3].y;
-
-        boolean isAnActualRectangle = ((leftOffset <= minimumSize && leftOffset >= -minimumSize)
-                && (rightOffset <= minimumSize && rightOffset >= -minimumSize)
-                && (bottomOffset <= minimumSize && bottomOffset >= -minimumSize)
-                && (topOffset <= minimumSize && topOffset >= -minimumSize));
-
-        return isANormalShape && isAnActualRectangle && isBigEnough;
-    }
-
-    private Mat fourPointTransform(Mat src, Point[] pts) {
-        Point tl = pts[0];
-        Point tr = pts[1];
-        Point br = pts[2];
-        Point bl = pts[3];
-
-        double widthA = Math.sqrt(Math.pow(br.x - bl.x, 2) + Math.pow(br.y - bl.y, 2));
-        double widthB = Math.sqrt(Math.pow(tr.x - tl.x, 2) + Math.pow(tr.y - tl.y, 2));
-
-        double dw = Math.max(widthA, widthB);
-        int maxWidth = Double.valueOf(dw).intValue();
-
-        double heightA = Math.sqrt(Math.pow(tr.x - br.x, 2) + Math.pow(tr.y - br.y, 2));
-        double heightB = Math.sqrt(Math.pow(tl.x - bl.x, 2) + Math.pow(tl.y - bl.y, 2));
-
-        double dh = Math.max(heightA, heightB);
-        int maxHeight = Double.valueOf(dh).intValue();
-
-        Mat doc = new Mat(maxHeight, maxWidth, CvType.CV_8UC4);
-
-        Mat src_mat = new Mat(4, 1, CvType.CV_32FC2);
-        Mat dst_mat = new Mat(4, 1, CvType.CV_32FC2);
-
-        src_mat.put(0, 0, tl.x, tl.y, tr.x, tr.y, br.x, br.y,
-                bl.x, bl.y);
-        dst_mat.put(0, 0, 0.0, 0.0, dw, 0.0, dw, dh, 0.0, dh);
-
-        Mat m = Imgproc.getPerspectiveTransform(src_mat, dst_mat);
-
-        Imgproc.warpPerspective(src, doc, m, doc.size());
-
-        return doc;
-    }
-
-    private ArrayList<MatOfPoint> findContours(Mat src) {
-
-        Mat grayImage;
-        Mat cannedImage;
-        Mat resizedImage;
-
-        int height = Double.valueOf(src.size().height).intValue();
-        int width = Double.valueOf(src.size().width).intValue();
-        Size size = new Size(width, height);
-
-        resizedImage = new Mat(size, CvType.CV_8UC4);
-        grayImage = new Mat(size, CvType.CV_8UC4);
-        cannedImage = new Mat(size, CvType.CV_8UC1);
-
-        Imgproc.resize(src, resizedImage, size);
-        Imgproc.cvtColor(resizedImage, grayImage, Imgproc.COLOR_RGBA2GRAY, 4);
-        Imgproc.GaussianBlur(grayImage, grayImage, new Size(5, 5), 0);
-        Imgproc.Canny(grayImage, cannedImage, 80, 100, 3, false);
-
-        ArrayList<MatOfPoint> contours = new ArrayList<>();
-        Mat hierarchy = new Mat();
-
-        Imgproc.findContours(cannedImage, contours, hierarchy, Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_SIMPLE);
-
-        hierarchy.release();
-
-        Collections.sort(contours, new Comparator<MatOfPoint>() {
+        }
 
-            @Override
-            public int compare(MatOfPoint lhs, MatOfPoint rhs) {
-                return Double.compare(Imgproc.contourArea(rhs), Imgproc.contourArea(lhs));
+        if (rectangle == null) {
+            rectangle = detectRectangle(grayImage, srcSize, detectionScale, rotation);
+            if (rectangle != null) {
+                tracker.lock(grayImage, getSourceCorners(rectangle, size, detectionScale, rotation), frameNumber);
+            } else {
+                tracker.reset(frameNumber);
             }
-        });
-
-        resizedImage.release();
-        grayImage.release();
-        cannedImage.release();
-
-        return contours;
-    }
-
-    /*!
-     Applies filters to the image based on the set filter
-     */
-    public void applyFilters(Mat image) {
-      int filterId = this.mMainActivity.getFilterId();
-      switch (filterId) {
-        case 1: {
-          // original image
-          break;
         }
-        case 2: {
-          applyGreyscaleFilterToImage(image);
-          break;
-        }
-        case 3: {
-          applyColorFilterToImage(image);
-          break;
-        }
-        case 4: {
-          applyBlackAndWhiteFilterToImage(image);
-          break;
-        }
-        default:
-          // original image
-      }
+        return rectangle;
     }
 
-    /*!
-     Slightly enhances the black and white image
-     */
-    public Mat applyGreyscaleFilterToImage(Mat image)
-    {
-      Imgproc.cvtColor(image, image, Imgproc.COLOR_RGBA2GRAY);
-      return image;
+    /**
+    Returns the corners of a detected rectangle in the orientation and scale of
+    the detection image. The returned array is reused by the next call.
+    */
+    private double[] getSourceCorners(Quadrilateral rectangle, Size size, double detectionScale, int rotation) {
+        double[] corners = this.candidateCorners;
+        QuadGeometry.scale(rectangle.corners, 4, detectionScale, corners);
+        QuadGeometry.rotateFromScreen(corners, 4, size.width, size.height, rotation);
+        return corners;
     }
 
-    /*!
-     Slightly enhances the black and white image
-     */
-    public Mat applyBlackAndWhiteFilterToImage(Mat image)
-    {
-      Imgproc.cvtColor(image, image, Imgproc.COLOR_RGBA2GRAY);
-      image.convertTo(image, -1, 1, 10);
-      return image;
+    /**
+    Finds the biggest rectangle in the contours and releases the rest. The
+    contours are found on an image scaled by detectionScale, so the corners are
+    scaled back to the source size.
+    */
+    private Quadrilateral getQuadrilateral(ArrayList<MatOfPoint> contours, Size size, Size srcSize, double detectionScale, int rotation) {
+        long startTime = PipelineMetrics.start();
+        MatOfPoint contour = this.detector.findQuadrilateral(contours, size, rotation, this.candidateCorners);
+        Quadrilateral quadrilateral = null;
+        if (contour != null) {
+            quadrilateral = toQuadrilateral(contour, this.candidateCorners, srcSize, detectionScale, rotation);
+        }
+        PipelineMetrics.record(PipelineMetrics.FIND_QUADRILATERAL, startTime);
+        return quadrilateral;
     }
 
-    /*!
-     Slightly enhances the color on the image
-     */
-    public Mat applyColorFilterToImage(Mat image)
-    {
-      image.convertTo(image, -1, 1.2, 0);
-      return image;
+    /**
+    Returns the rectangle of the corners found on the screen rotated detection
+    image, scaled back to the source size
+    */
+    private Quadrilateral toQuadrilateral(MatOfPoint contour, double[] screenCorners, Size srcSize, double detectionScale, int rotation) {
+        double[] corners = new double[8];
+        QuadGeometry.scale(screenCorners, 4, 1 / detectionScale, corners);
+        return new Quadrilateral(contour, corners, RectangleDetector.getSizeForScreen(srcSize, rotation));
     }
 
-
-    public void rotateImageForScreen(Mat image) {
-      switch (this.mMainActivity.lastDetectedRotation) {
-        case Surface.ROTATION_90: {
-          // Do nothing
-          break;
-        }
-        case Surface.ROTATION_180: {
-          Core.flip(image.t(), image, 0);
-          break;
-        }
-        case Surface.ROTATION_270: {
-          Core.flip(image, image, 0);
-          Core.flip(image, image, 1);
-          break;
-        }
-        case Surface.ROTATION_0:
-        default: {
-          Core.flip(image.t(), image, 1);
-          break;
-        }
-      }
+    /**
+    Finds the contours in the greyscale detection image and selects the
+    biggest ones that are at least minArea, sorted from the biggest to the
+    smallest. The offset is added to every contour point, which places
+    contours found in a region back into the whole image.
+    */
+    private ArrayList<MatOfPoint> findContours(Mat grayImage, Point offset, double minArea) {
+        long startTime = PipelineMetrics.start();
+        ArrayList<MatOfPoint> contours = this.detector.findContours(grayImage, offset);
+        PipelineMetrics.record(PipelineMetrics.FIND_CONTOURS, startTime);
+
+        startTime = PipelineMetrics.start();
+        ArrayList<MatOfPoint> selectedContours = ContourSelector.select(contours, minArea);
+        PipelineMetrics.record(PipelineMetrics.SELECT_CONTOURS, startTime);
+        return selectedContours;
     }
 }
@@ -13,6 +13,10 @@ public class ImageProcessorMessage  {
         setCommand(command);
     }
 
+    public ImageProcessorMessage(String command) {
+        this(command, null);
+    }
+
 
     public String getCommand() {
         return command;
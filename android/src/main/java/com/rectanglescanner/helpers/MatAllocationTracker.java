@@ -0,0 +1,82 @@
+package com.rectanglescanner.helpers;
+
+import android.os.Bundle;
+
+import org.opencv.core.Mat;
+
+import java.util.IdentityHashMap;
+
+/**
+  Keeps count of the native memory held by the Mats of the frame and capture
+  pipelines. Mats are tracked when created through create or track and
+  untracked when released through release.
+ */
+public class MatAllocationTracker {
+
+    private static final IdentityHashMap<Mat, Long> liveMats = new IdentityHashMap<>();
+    private static long liveBytes = 0;
+    private static long highWaterBytes = 0;
+    private static int highWaterCount = 0;
+    private static long totalAllocations = 0;
+
+    /**
+    Creates and tracks a new Mat
+    */
+    public static Mat create(int rows, int cols, int type) {
+        return track(new Mat(rows, cols, type));
+    }
+
+    /**
+    Starts tracking a Mat that was created elsewhere (ex: by OpenCV)
+    */
+    public static synchronized <T extends Mat> T track(T mat) {
+        if (mat == null || liveMats.containsKey(mat)) {
+            return mat;
+        }
+
+        long bytes = mat.total() * mat.elemSize();
+        liveMats.put(mat, bytes);
+        liveBytes += bytes;
+        totalAllocations++;
+        highWaterBytes = Math.max(highWaterBytes, liveBytes);
+        highWaterCount = Math.max(highWaterCount, liveMats.size());
+        return mat;
+    }
+
+    /**
+    Releases the native memory of a Mat and stops tracking it
+    */
+    public static void release(Mat mat) {
+        if (mat == null) {
+            return;
+        }
+        synchronized (MatAllocationTracker.class) {
+            Long bytes = liveMats.remove(mat);
+            if (bytes != null) {
+                liveBytes -= bytes;
+            }
+        }
+        mat.release();
+    }
+
+    /**
+    Returns the current allocation stats as a bundle object
+    */
+    public static synchronized Bundle getStats() {
+        Bundle stats = new Bundle();
+        stats.putInt("liveCount", liveMats.size());
+        stats.putDouble("liveBytes", liveBytes);
+        stats.putInt("highWaterCount", highWaterCount);
+        stats.putDouble("highWaterBytes", highWaterBytes);
+        stats.putDouble("totalAllocations", totalAllocations);
+        return stats;
+    }
+
+    /**
+    Resets the high-water marks to the current usage
+    */
+    public static synchronized void resetHighWaterMark() {
+        highWaterBytes = liveBytes;
+        highWaterCount = liveMats.size();
+    }
+}
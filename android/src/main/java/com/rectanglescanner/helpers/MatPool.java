@@ -0,0 +1,145 @@
+package com.rectanglescanner.helpers;
+
+import android.util.Log;
+
+import com.rectanglescanner.BuildConfig;
+import com.rectanglescanner.core.MatAllocator;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+  Keeps a small set of reusable Mats keyed by their size and type so the
+  preview frame pipeline does not allocate new native buffers every frame.
+
+  Mats handed out by acquire must be given back with release. In debug builds
+  the pool remembers where every outstanding Mat was acquired so leaks can be
+  reported.
+ */
+public class MatPool implements MatAllocator {
+
+    private static final String TAG = "MatPool";
+    private static final int MAX_BUCKETS = 8;
+    private static final int MAX_MATS_PER_BUCKET = 4;
+    private static final int LEAK_WARNING_THRESHOLD = 32;
+
+    private final ArrayList<Bucket> buckets = new ArrayList<>();
+    private final IdentityHashMap<Mat, Throwable> outstanding = new IdentityHashMap<>();
+    private boolean leakWarningLogged = false;
+
+    /**
+    Returns a Mat with the given size and type. The contents are undefined.
+    */
+    @Override
+    public synchronized Mat acquire(int rows, int cols, int type) {
+        Mat mat = null;
+        Bucket bucket = findBucket(rows, cols, type);
+        if (bucket != null && !bucket.mats.isEmpty()) {
+            mat = bucket.mats.pop();
+        } else {
+            mat = MatAllocationTracker.create(rows, cols, type);
+        }
+
+        if (BuildConfig.DEBUG) {
+            trackAcquired(mat);
+        }
+        return mat;
+    }
+
+    /**
+    Gives a Mat back to the pool. Mats that can't be reused (sub-matrices or
+    when the pool is full) are released.
+    */
+    @Override
+    public synchronized void release(Mat mat) {
+        if (mat == null) {
+            return;
+        }
+
+        if (BuildConfig.DEBUG && outstanding.remove(mat) == null) {
+            Log.w(TAG, "Released a Mat that was not acquired from the pool");
+        }
+
+        if (mat.empty() || mat.isSubmatrix()) {
+            MatAllocationTracker.release(mat);
+            return;
+        }
+
+        Bucket bucket = findBucket(mat.rows(), mat.cols(), mat.type());
+        if (bucket == null) {
+            if (buckets.size() >= MAX_BUCKETS) {
+                // The oldest sizes are most likely from a previous preview size
+                buckets.remove(0).releaseAll();
+            }
+            bucket = new Bucket(mat.rows(), mat.cols(), mat.type());
+            buckets.add(bucket);
+        }
+
+        if (bucket.mats.size() < MAX_MATS_PER_BUCKET) {
+            bucket.mats.push(mat);
+        } else {
+            MatAllocationTracker.release(mat);
+        }
+    }
+
+    /**
+    Releases every pooled Mat. In debug builds any Mat that was acquired and
+    never given back is reported.
+    */
+    public synchronized void clear() {
+        for (Bucket bucket : buckets) {
+            bucket.releaseAll();
+        }
+        buckets.clear();
+
+        if (BuildConfig.DEBUG) {
+            for (Map.Entry<Mat, Throwable> leak : outstanding.entrySet()) {
+                Log.w(TAG, "Mat was never released to the pool", leak.getValue());
+            }
+        }
+        outstanding.clear();
+        leakWarningLogged = false;
+    }
+
+    private void trackAcquired(Mat mat) {
+        outstanding.put(mat, new Throwable("Acquired " + mat.size() + " type " + mat.type()));
+        if (!leakWarningLogged && outstanding.size() > LEAK_WARNING_THRESHOLD) {
+            leakWarningLogged = true;
+            Log.w(TAG, outstanding.size() + " Mats are acquired from the pool and not released, this is probably a leak");
+        }
+    }
+
+    private Bucket findBucket(int rows, int cols, int type) {
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.rows == rows && bucket.cols == cols && bucket.type == type) {
+                return bucket;
+            }
+        }
+        return null;
+    }
+
+    private static class Bucket {
+        final int rows;
+        final int cols;
+        final int type;
+        final ArrayDeque<Mat> mats = new ArrayDeque<>();
+
+        Bucket(int rows, int cols, int type) {
+            this.rows = rows;
+            this.cols = cols;
+            this.type = type;
+        }
+
+        void releaseAll() {
+            for (Mat mat : mats) {
+                MatAllocationTracker.release(mat);
+            }
+            mats.clear();
+        }
+    }
+}
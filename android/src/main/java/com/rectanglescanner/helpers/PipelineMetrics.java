@@ -0,0 +1,179 @@
+package com.rectanglescanner.helpers;
+
+import android.os.Bundle;
+
+import java.util.Arrays;
+
+/**
+  Records how long each stage of the preview and capture pipelines takes and
+  counts frames that were dropped or skipped.
+
+  Each stage keeps its most recent durations in a fixed ring buffer, so
+  recording never allocates. Percentiles are only computed when the metrics
+  are read.
+ */
+public class PipelineMetrics {
+
+    // Preview frame stages
+    public static final int CONVERT_FRAME = 0;
+    public static final int MEASURE_SHARPNESS = 1;
+    public static final int TRACK_RECTANGLE = 2;
+    public static final int FIND_CONTOURS = 3;
+    public static final int SELECT_CONTOURS = 4;
+    public static final int FIND_QUADRILATERAL = 5;
+    public static final int SEND_DETECTION = 6;
+    public static final int PROCESS_FRAME = 7;
+    // Capture stages
+    public static final int DECODE_CAPTURE = 8;
+    public static final int APPLY_FILTERS = 9;
+    public static final int WARP_PERSPECTIVE = 10;
+    public static final int ENCODE_IMAGES = 11;
+    public static final int PROCESS_CAPTURE = 12;
+
+    private static final String[] STAGE_NAMES = {
+        "convertFrame",
+        "measureSharpness",
+        "trackRectangle",
+        "findContours",
+        "selectContours",
+        "findQuadrilateral",
+        "sendDetection",
+        "processFrame",
+        "decodeCapture",
+        "applyFilters",
+        "warpPerspective",
+        "encodeImages",
+        "processCapture",
+    };
+
+    // Counters
+    public static final int FRAMES_RECEIVED = 0;
+    public static final int FRAMES_DROPPED = 1;
+    public static final int FRAMES_OUT_OF_ORDER = 2;
+    public static final int FRAMES_TOO_BLURRY = 3;
+    public static final int DETECTIONS_SENT = 4;
+    public static final int DETECTIONS_SUPPRESSED = 5;
+
+    private static final String[] COUNTER_NAMES = {
+        "framesReceived",
+        "framesDropped",
+        "framesOutOfOrder",
+        "framesTooBlurry",
+        "detectionsSent",
+        "detectionsSuppressed",
+    };
+
+    private static final int SAMPLE_COUNT = 256;
+
+    private static final Stage[] stages = new Stage[STAGE_NAMES.length];
+    private static final long[] counters = new long[COUNTER_NAMES.length];
+
+    static {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new Stage();
+        }
+    }
+
+    /**
+    Returns the current time to measure a stage from
+    */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+    Records the time since startNanos as a duration of the stage
+    */
+    public static void record(int stage, long startNanos) {
+        stages[stage].add(System.nanoTime() - startNanos);
+    }
+
+    /**
+    Adds one to the counter
+    */
+    public static void increment(int counter) {
+        synchronized (counters) {
+            counters[counter]++;
+        }
+    }
+
+    /**
+    Returns the stage percentiles (in milliseconds) and the counters as a bundle object
+    */
+    public static Bundle getStats() {
+        Bundle stageStats = new Bundle();
+        for (int i = 0; i < stages.length; i++) {
+            stageStats.putBundle(STAGE_NAMES[i], stages[i].getStats());
+        }
+
+        Bundle counterStats = new Bundle();
+        synchronized (counters) {
+            for (int i = 0; i < counters.length; i++) {
+                counterStats.putDouble(COUNTER_NAMES[i], counters[i]);
+            }
+        }
+
+        Bundle stats = new Bundle();
+        stats.putBundle("stages", stageStats);
+        stats.putBundle("counters", counterStats);
+        return stats;
+    }
+
+    /**
+    Clears every recorded duration and counter
+    */
+    public static void reset() {
+        for (Stage stage : stages) {
+            stage.clear();
+        }
+        synchronized (counters) {
+            Arrays.fill(counters, 0);
+        }
+    }
+
+    private static class Stage {
+        private final long[] samples = new long[SAMPLE_COUNT];
+        private int next = 0;
+        private int sampleCount = 0;
+        private long count = 0;
+
+        synchronized void add(long nanos) {
+            this.samples[this.next] = nanos;
+            this.next = (this.next + 1) % SAMPLE_COUNT;
+            this.sampleCount = Math.min(this.sampleCount + 1, SAMPLE_COUNT);
+            this.count++;
+        }
+
+        synchronized void clear() {
+            this.next = 0;
+            this.sampleCount = 0;
+            this.count = 0;
+        }
+
+        Bundle getStats() {
+            long[] sorted;
+            long total;
+            synchronized (this) {
+                sorted = Arrays.copyOf(this.samples, this.sampleCount);
+                total = this.count;
+            }
+            Arrays.sort(sorted);
+
+            Bundle stats = new Bundle();
+            stats.putDouble("count", total);
+            stats.putDouble("p50", percentile(sorted, 0.50));
+            stats.putDouble("p95", percentile(sorted, 0.95));
+            stats.putDouble("p99", percentile(sorted, 0.99));
+            stats.putDouble("max", sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0);
+            return stats;
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.rectanglescanner.helpers;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Size;
+import org.opencv.video.Video;
+
+/**
+  Follows the corners of the last detected rectangle from frame to frame with
+  optical flow, so most frames don't need the full contour detection.
+
+  The tracker is locked onto the corners found by a full detection. Each
+  tracked frame moves the corners by the optical flow from the previous frame.
+  Tracking is lost when a corner can't be followed, and a full detection is
+  asked for every few frames so the tracked corners don't drift.
+
+  Images and corners are in the orientation and scale of the detection image.
+  Frames can be handed in by several detection threads, anything older than
+  the last frame the tracker saw is ignored.
+ */
+public class QuadTracker {
+
+    private static final int FULL_DETECTION_INTERVAL = 10;
+    private static final Size WINDOW_SIZE = new Size(21, 21);
+    private static final int PYRAMID_LEVELS = 2;
+    // Mean absolute difference of the window around a corner
+    private static final float MAX_TRACKING_ERROR = 30;
+
+    private Mat previousImage = null;
+    private final double[] corners = new double[8];
+    private boolean locked = false;
+    private final float[] pointBuffer = new float[8];
+    private final byte[] found = new byte[4];
+    private final float[] errors = new float[4];
+    // Reused by every tracked frame, created on the first lock since OpenCV
+    // may not be loaded when the tracker is created
+    private MatOfPoint2f previousPoints = null;
+    private MatOfPoint2f nextPoints = null;
+    private MatOfByte status = null;
+    private MatOfFloat error = null;
+    private long previousFrameNumber = -1;
+    private int trackedFrames = 0;
+
+    /**
+    Returns true if the tracker is locked onto corners and a full detection is
+    not due yet
+    */
+    public synchronized boolean shouldTrack() {
+        return this.locked && this.trackedFrames < FULL_DETECTION_INTERVAL;
+    }
+
+    /**
+    Locks onto the corners of a rectangle found by a full detection of the image
+    */
+    public synchronized void lock(Mat image, double[] corners, long frameNumber) {
+        if (frameNumber < this.previousFrameNumber) {
+            return;
+        }
+        if (this.previousPoints == null) {
+            this.previousPoints = new MatOfPoint2f();
+            this.previousPoints.alloc(4);
+            this.nextPoints = new MatOfPoint2f();
+            this.status = new MatOfByte();
+            this.error = new MatOfFloat();
+        }
+        storeImage(image, frameNumber);
+        System.arraycopy(corners, 0, this.corners, 0, 8);
+        this.locked = true;
+        this.trackedFrames = 0;
+    }
+
+    /**
+    Moves the locked corners to where they are in the given image and copies
+    them into out.
+    @return false if the rectangle could not be tracked
+    */
+    public synchronized boolean track(Mat image, long frameNumber, double[] out) {
+        if (!this.locked || frameNumber <= this.previousFrameNumber) {
+            return false;
+        }
+        if (this.previousImage.rows() != image.rows() || this.previousImage.cols() != image.cols()) {
+            reset(frameNumber);
+            return false;
+        }
+
+        for (int i = 0; i < 8; i++) {
+            this.pointBuffer[i] = (float) this.corners[i];
+        }
+        this.previousPoints.put(0, 0, this.pointBuffer);
+
+        Video.calcOpticalFlowPyrLK(this.previousImage, image, this.previousPoints, this.nextPoints, this.status, this.error, WINDOW_SIZE, PYRAMID_LEVELS);
+
+        this.status.get(0, 0, this.found);
+        this.error.get(0, 0, this.errors);
+        for (int i = 0; i < 4; i++) {
+            if (this.found[i] == 0 || this.errors[i] > MAX_TRACKING_ERROR) {
+                reset(frameNumber);
+                return false;
+            }
+        }
+
+        this.nextPoints.get(0, 0, this.pointBuffer);
+        for (int i = 0; i < 8; i++) {
+            this.corners[i] = this.pointBuffer[i];
+        }
+        System.arraycopy(this.corners, 0, out, 0, 8);
+
+        storeImage(image, frameNumber);
+        this.trackedFrames++;
+        return true;
+    }
+
+    /**
+    Drops the locked corners, the next frame needs a full detection
+    */
+    public synchronized void reset(long frameNumber) {
+        if (frameNumber < this.previousFrameNumber) {
+            return;
+        }
+        this.previousFrameNumber = frameNumber;
+        this.locked = false;
+        this.trackedFrames = 0;
+    }
+
+    /**
+    Releases the stored image and the optical flow buffers, and drops the
+    locked corners. The buffers are created again by the next lock.
+    */
+    public synchronized void release() {
+        MatAllocationTracker.release(this.previousImage);
+        this.previousImage = null;
+        if (this.previousPoints != null) {
+            this.previousPoints.release();
+            this.nextPoints.release();
+            this.status.release();
+            this.error.release();
+            this.previousPoints = null;
+            this.nextPoints = null;
+            this.status = null;
+            this.error = null;
+        }
+        this.locked = false;
+        this.trackedFrames = 0;
+        this.previousFrameNumber = -1;
+    }
+
+    /**
+    Copies the image into the stored previous image, reusing its buffer when
+    the size is the same
+    */
+    private void storeImage(Mat image, long frameNumber) {
+        if (this.previousImage == null || this.previousImage.rows() != image.rows()
+                || this.previousImage.cols() != image.cols() || this.previousImage.type() != image.type()) {
+            MatAllocationTracker.release(this.previousImage);
+            this.previousImage = MatAllocationTracker.create(image.rows(), image.cols(), image.type());
+        }
+        image.copyTo(this.previousImage);
+        this.previousFrameNumber = frameNumber;
+    }
+}
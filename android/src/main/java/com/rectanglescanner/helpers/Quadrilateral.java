@@ -8,18 +8,21 @@ import org.opencv.core.Size;
 
 import android.os.Bundle;
 
+import com.rectanglescanner.core.QuadGeometry;
+
 /**
  * Created by Jake on Jan 6, 2020.
- * Represents the detected rectangle from an image
+ * Represents the detected rectangle from an image. The corners are x, y pairs
+ * in the order of QuadGeometry (top left, top right, bottom right, bottom left).
  */
 public class Quadrilateral {
     public MatOfPoint contour;
-    public Point[] points;
+    public double[] corners;
     public Size sourceSize;
 
-    public Quadrilateral(MatOfPoint contour, Point[] points, Size sourceSize) {
+    public Quadrilateral(MatOfPoint contour, double[] corners, Size sourceSize) {
         this.contour = contour;
-        this.points = points;
+        this.corners = corners;
         this.sourceSize = sourceSize;
     }
 
@@ -27,7 +30,14 @@ public class Quadrilateral {
     Crops the edges of the image to the aspect ratio of the detected rectangle.
     */
     public Mat cropImageToRectangleSize(Mat image) {
-      Size imageSize = image.size();
+      return new Mat(image, getRectangleSizeCrop(image.size()));
+    }
+
+    /**
+    Returns the part of an image of the given size that is cropped to the
+    aspect ratio of the detected rectangle, centered in the image.
+    */
+    public Rect getRectangleSizeCrop(Size imageSize) {
       double rectangleRatio = this.sourceSize.height / this.sourceSize.width;
       double imageRatio = imageSize.height / imageSize.width;
 
@@ -46,30 +56,36 @@ public class Quadrilateral {
         rectangleXCoord = (int)((imageSize.width - cropWidth) / 2);
       }
 
-      Rect rectCrop = new Rect(rectangleXCoord, rectangleYCoord, (int)cropWidth, (int)cropHeight);
-      return new Mat(image, rectCrop);
+      return new Rect(rectangleXCoord, rectangleYCoord, (int)cropWidth, (int)cropHeight);
     }
 
     /**
-    Returns the points of the rectangle scaled to the given size
+    Returns a copy of the corners of the rectangle scaled to the given size
     */
-    public Point[] getPointsForSize(Size outputSize) {
+    public double[] getCornersForSize(Size outputSize) {
       double scale = outputSize.height / this.sourceSize.height;
-      if (scale == 1) {
-        return this.points;
-      }
-
-      Point[] scaledPoints = new Point[4];
-      for (int i = 0;i < this.points.length;i++ ) {
-        scaledPoints[i] = this.points[i].clone();
-        scaledPoints[i].x *= scale;
-        scaledPoints[i].y *= scale;
-      }
+      double[] scaledCorners = new double[8];
+      QuadGeometry.scale(this.corners, 4, scale, scaledCorners);
+      return scaledCorners;
+    }
 
-      return scaledPoints;
+    /**
+    Returns the corners of the rectangle as OpenCV points
+    */
+    public Point[] getPoints() {
+      return QuadGeometry.toPoints(this.corners, 4);
     }
 
 
+    /**
+    Releases the native memory of the contour
+    */
+    public void release() {
+      if (this.contour != null) {
+        this.contour.release();
+      }
+    }
+
     /**
     Returns the rectangle as a bundle object
     */
@@ -77,23 +93,23 @@ public class Quadrilateral {
       Bundle quadMap = new Bundle();
 
       Bundle bottomLeft = new Bundle();
-      bottomLeft.putDouble("x", this.points[2].x);
-      bottomLeft.putDouble("y", this.points[2].y);
+      bottomLeft.putDouble("x", QuadGeometry.x(this.corners, 2));
+      bottomLeft.putDouble("y", QuadGeometry.y(this.corners, 2));
       quadMap.putBundle("bottomLeft", bottomLeft);
 
       Bundle bottomRight = new Bundle();
-      bottomRight.putDouble("x", this.points[1].x);
-      bottomRight.putDouble("y", this.points[1].y);
+      bottomRight.putDouble("x", QuadGeometry.x(this.corners, 1));
+      bottomRight.putDouble("y", QuadGeometry.y(this.corners, 1));
       quadMap.putBundle("bottomRight", bottomRight);
 
       Bundle topLeft = new Bundle();
-      topLeft.putDouble("x", this.points[3].x);
-      topLeft.putDouble("y", this.points[3].y);
+      topLeft.putDouble("x", QuadGeometry.x(this.corners, 3));
+      topLeft.putDouble("y", QuadGeometry.y(this.corners, 3));
       quadMap.putBundle("topLeft", topLeft);
 
       Bundle topRight = new Bundle();
-      topRight.putDouble("x", this.points[0].x);
-      topRight.putDouble("y", this.points[0].y);
+      topRight.putDouble("x", QuadGeometry.x(this.corners, 0));
+      topRight.putDouble("y", QuadGeometry.y(this.corners, 0));
       quadMap.putBundle("topRight", topRight);
 
       Bundle dimensions = new Bundle();
@@ -3,8 +3,6 @@ package com.rectanglescanner.views;
 import android.app.Activity;
 import android.content.Context;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.ImageFormat;
 import android.hardware.Camera;
 import android.hardware.Camera.PictureCallback;
@@ -23,14 +21,18 @@ import android.content.res.Configuration;
 import android.widget.FrameLayout;
 
 import com.rectanglescanner.R;
+import com.rectanglescanner.helpers.MatAllocationTracker;
+import com.rectanglescanner.helpers.MatPool;
+import com.rectanglescanner.helpers.PipelineMetrics;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.WritableNativeMap;
 
 import org.opencv.android.JavaCameraView;
-import org.opencv.android.Utils;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
 import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 import java.util.List;
 
@@ -58,8 +60,15 @@ public class CameraDeviceController extends JavaCameraView implements PictureCal
     protected boolean isStopped = true;
     private WritableMap deviceConfiguration = new WritableNativeMap();
     private int captureDevice = -1;
-    private boolean imageProcessorBusy = true;
     private boolean cameraRequiresManualAutoFocus = false;
+    protected final MatPool mMatPool = new MatPool();
+    private static final int PREVIEW_BUFFER_COUNT = 3;
+    private volatile byte[][] previewBuffers = null;
+    private volatile int previewWidth = 0;
+    private volatile int previewHeight = 0;
+    private int previewBufferSize = 0;
+    private volatile int pictureWidth = 0;
+    private volatile int pictureHeight = 0;
 
     private static CameraDeviceController mThis;
 
@@ -105,11 +114,13 @@ public class CameraDeviceController extends JavaCameraView implements PictureCal
     public void cleanupCamera() {
       if (mCamera != null) {
           mCamera.stopPreview();
-          mCamera.setPreviewCallback(null);
+          mCamera.setPreviewCallbackWithBuffer(null);
           mCamera.release();
           mCamera = null;
           this.cameraIsSetup = false;
       }
+      this.previewBuffers = null;
+      mMatPool.clear();
     }
 
     /**
@@ -131,8 +142,9 @@ public class CameraDeviceController extends JavaCameraView implements PictureCal
                 setupCameraView();
             }
             mCamera.setPreviewDisplay(mSurfaceHolder);
+            mCamera.setPreviewCallbackWithBuffer(this);
+            addPreviewCallbackBuffers();
             mCamera.startPreview();
-            mCamera.setPreviewCallback(this);
             this.isStopped = false;
         } catch (Exception e) {
             Log.d(TAG, "Error starting preview: " + e);
@@ -149,6 +161,8 @@ public class CameraDeviceController extends JavaCameraView implements PictureCal
         try {
           if (mCamera != null) {
             mCamera.stopPreview();
+            // Clears the callback buffer queue, they are added again on start
+            mCamera.setPreviewCallbackWithBuffer(null);
           }
           this.isStopped = true;
         }
@@ -158,6 +172,43 @@ public class CameraDeviceController extends JavaCameraView implements PictureCal
       }
     }
 
+    /**
+    Gives the camera the preallocated preview frame buffers so it doesn't
+    allocate a new byte[] for every frame. New buffers are used on every start
+    so a buffer still held by the image processor is never queued twice.
+    */
+    private void addPreviewCallbackBuffers() {
+      byte[][] buffers = new byte[PREVIEW_BUFFER_COUNT][this.previewBufferSize];
+      this.previewBuffers = buffers;
+      for (byte[] buffer : buffers) {
+        mCamera.addCallbackBuffer(buffer);
+      }
+    }
+
+    /**
+    Returns a preview frame buffer to the camera once its data was copied.
+    Can be called from any thread.
+    */
+    public void releasePreviewBuffer(byte[] buffer) {
+      Camera camera = mCamera;
+      byte[][] buffers = this.previewBuffers;
+      if (camera == null || buffers == null) {
+        return;
+      }
+
+      for (byte[] previewBuffer : buffers) {
+        if (previewBuffer == buffer) {
+          try {
+            camera.addCallbackBuffer(buffer);
+          } catch (RuntimeException e) {
+            // The camera was released while the frame was processed
+            Log.d(TAG, "Failed to return preview buffer: " + e);
+          }
+          return;
+        }
+      }
+    }
+
     /**
     Tell the camera to focus
     */
@@ -220,6 +271,13 @@ public class CameraDeviceController extends JavaCameraView implements PictureCal
     // Getters
     //================================================================================
 
+    /**
+    Returns the pool used to reuse the Mats of the preview frame pipeline
+    */
+    public MatPool getMatPool() {
+        return mMatPool;
+    }
+
     private int getCameraDevice() {
         int cameraId = -1;
         // Search for the back facing camera
@@ -341,6 +399,9 @@ public class CameraDeviceController extends JavaCameraView implements PictureCal
 
       Camera.Size pSize = getOptimalResolution(displayRatio, getResolutionList());
       param.setPreviewSize(pSize.width, pSize.height);
+      this.previewWidth = pSize.width;
+      this.previewHeight = pSize.height;
+      this.previewBufferSize = pSize.width * pSize.height * ImageFormat.getBitsPerPixel(param.getPreviewFormat()) / 8;
       param.setWhiteBalance(Camera.Parameters.WHITE_BALANCE_AUTO);
       float previewRatio = (float) pSize.width / pSize.height;
       setDevicePreviewSize(previewRatio);
@@ -348,6 +409,8 @@ public class CameraDeviceController extends JavaCameraView implements PictureCal
       Camera.Size maxRes = getOptimalResolution(previewRatio, getPictureResolutionList());
       if (maxRes != null) {
           param.setPictureSize(maxRes.width, maxRes.height);
+          this.pictureWidth = maxRes.width;
+          this.pictureHeight = maxRes.height;
           Log.d(TAG, "max supported picture resolution: " + maxRes.width + "x" + maxRes.height);
       }
 
@@ -476,18 +539,62 @@ public class CameraDeviceController extends JavaCameraView implements PictureCal
         setEnableTorch(false);
         this.safeToTakePicture = true;
 
-        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+        handleCapturedImage(data);
+    }
 
-        Mat picture = new Mat();
-        Bitmap bmp32 = bitmap.copy(Bitmap.Config.ARGB_8888, true);
-        Utils.bitmapToMat(bmp32, picture);
+    /**
+     Receives the captured JPEG. Decoding it is slow so it should be done off
+     the main thread with decodeCapturedImage.
+     */
+    public void handleCapturedImage(byte[] jpegData) {}
 
-        Mat mat = new Mat();
-        Imgproc.cvtColor(picture, mat, Imgproc.COLOR_BGR2RGB, 4);
+    /**
+     Decodes a captured JPEG into a Mat, at a reduced size when the picture is
+     at least twice as large as maxSize on its longest edge. 0 decodes the
+     full size image. The caller owns the Mat and must release it.
+     */
+    public Mat decodeCapturedImage(byte[] data, int maxSize) {
+        MatOfByte jpeg = new MatOfByte(data);
+        // Decodes straight into a BGR Mat. The camera doesn't write an EXIF
+        // rotation we want applied, the image is rotated for the screen later.
+        int flags = getReducedDecodeFlag(maxSize) | Imgcodecs.IMREAD_IGNORE_ORIENTATION;
+        Mat mat = Imgcodecs.imdecode(jpeg, flags);
+        jpeg.release();
+
+        if (mat.empty()) {
+            mat.release();
+            throw new IllegalArgumentException("Failed to decode the captured image");
+        }
+        return MatAllocationTracker.track(mat);
+    }
 
-        handleCapturedImage(mat);
+    /**
+     Returns the size of the pictures the camera captures, in the sensor's
+     orientation, or an empty size before the camera is set up
+     */
+    public Size getPictureSize() {
+        return new Size(this.pictureWidth, this.pictureHeight);
+    }
+
+    /**
+     Returns the imdecode flag that decodes the picture at the smallest size
+     (1/2, 1/4 or 1/8) that is still at least maxSize on its longest edge
+     */
+    private int getReducedDecodeFlag(int maxSize) {
+        int longestEdge = Math.max(this.pictureWidth, this.pictureHeight);
+        if (maxSize <= 0 || longestEdge == 0) {
+            return Imgcodecs.IMREAD_COLOR;
+        }
+
+        if (longestEdge / 8 >= maxSize) {
+            return Imgcodecs.IMREAD_REDUCED_COLOR_8;
+        } else if (longestEdge / 4 >= maxSize) {
+            return Imgcodecs.IMREAD_REDUCED_COLOR_4;
+        } else if (longestEdge / 2 >= maxSize) {
+            return Imgcodecs.IMREAD_REDUCED_COLOR_2;
+        }
+        return Imgcodecs.IMREAD_COLOR;
     }
-    public void handleCapturedImage(Mat capturedImage) {}
 
 
     public int getScreenRotationOnPhone() {
@@ -527,24 +634,57 @@ public class CameraDeviceController extends JavaCameraView implements PictureCal
      */
     @Override
     public void onPreviewFrame(byte[] data, Camera camera) {
-      try {
-        mSurfaceView.setVisibility(SurfaceView.VISIBLE);
-        Camera.Size pictureSize = camera.getParameters().getPreviewSize();
-        Mat yuv = new Mat(new Size(pictureSize.width, pictureSize.height * 1.5), CvType.CV_8UC1);
-        yuv.put(0, 0, data);
-
-        Mat mat = new Mat(new Size(pictureSize.width, pictureSize.height), CvType.CV_8UC4);
-        Imgproc.cvtColor(yuv, mat, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+      if (data == null) {
+        return;
+      }
+      mSurfaceView.setVisibility(SurfaceView.VISIBLE);
+      PipelineMetrics.increment(PipelineMetrics.FRAMES_RECEIVED);
+      processOutput(data);
+    }
 
-        yuv.release();
+    /**
+     Receives the raw NV21 preview frame buffer. The buffer must be given back
+     with releasePreviewBuffer once it is no longer needed.
+     */
+    public void processOutput(byte[] frame) {
+        releasePreviewBuffer(frame);
+    }
 
-        processOutput(mat);
-      } catch(Exception e) {
-        Log.d(TAG, "Error processing preview frame: " + e);
-      }
+    /**
+     Copies a raw preview frame into a Mat from the pool. This is the greyscale
+     luma plane unless previewFrameRequiresColor returns true, then it is RGBA.
+     The Mat should be released back to the pool.
+     */
+    public Mat convertPreviewFrame(byte[] data) {
+        long startTime = PipelineMetrics.start();
+        int width = this.previewWidth;
+        int height = this.previewHeight;
+        Mat mat;
+        if (previewFrameRequiresColor()) {
+          Mat yuv = mMatPool.acquire(height + height / 2, width, CvType.CV_8UC1);
+          yuv.put(0, 0, data);
+
+          mat = mMatPool.acquire(height, width, CvType.CV_8UC4);
+          Imgproc.cvtColor(yuv, mat, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+
+          mMatPool.release(yuv);
+        } else {
+          // The first width * height bytes of an NV21 frame are the luma plane,
+          // which already is the greyscale image. put only copies what fits.
+          mat = mMatPool.acquire(height, width, CvType.CV_8UC1);
+          mat.put(0, 0, data);
+        }
+        PipelineMetrics.record(PipelineMetrics.CONVERT_FRAME, startTime);
+        return mat;
     }
 
-    public void processOutput(Mat image) {}
+    /**
+     Returns true if the converted preview frame needs to be RGBA. Otherwise it
+     is the greyscale luma plane which skips the color conversion.
+     */
+    protected boolean previewFrameRequiresColor() {
+        return false;
+    }
 
     private void makeShutterSound() {
         AudioManager audio = (AudioManager) mActivity.getSystemService(Context.AUDIO_SERVICE);
@@ -4,15 +4,31 @@ import android.app.Activity;
 import android.content.Context;
 import android.view.LayoutInflater;
 import android.widget.FrameLayout;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.WritableNativeMap;
 import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.uimanager.UIManagerModule;
 import com.facebook.react.uimanager.events.RCTEventEmitter;
 
 import com.rectanglescanner.R;
+import com.rectanglescanner.helpers.PipelineMetrics;
+import com.rectanglescanner.helpers.Quadrilateral;
 
 public class MainView extends FrameLayout {
     private RNRectangleScannerView view;
+    private int pipelineMetricsInterval = 0;
+
+    private final Runnable sendPipelineMetrics = new Runnable() {
+        @Override
+        public void run() {
+            if (pipelineMetricsInterval <= 0) {
+                return;
+            }
+            pipelineMetricsWereUpdated(Arguments.fromBundle(PipelineMetrics.getStats()));
+            postDelayed(this, pipelineMetricsInterval);
+        }
+    };
 
     public static MainView instance = null;
 
@@ -51,10 +67,94 @@ public class MainView extends FrameLayout {
         view.setCapturedQuality(quality);
     }
 
+    public void setOutputFormat(String format) {
+        view.setOutputFormat(format);
+    }
+
+    public void setOutputLossless(boolean lossless) {
+        view.setOutputLossless(lossless);
+    }
+
+    public void setOutputCompressionLevel(int compressionLevel) {
+        view.setOutputCompressionLevel(compressionLevel);
+    }
+
+    public void setOutputGrayscale(boolean grayscale) {
+        view.setOutputGrayscale(grayscale);
+    }
+
     public void setFilterId(int filterId) {
         view.setFilterId(filterId);
     }
 
+    public void setDetectionResolution(int maxSize) {
+        view.setDetectionResolution(maxSize);
+    }
+
+    public void setCroppedImageMaxSize(int maxSize) {
+        view.setCroppedImageMaxSize(maxSize);
+    }
+
+    public void setInitialImageMaxSize(int maxSize) {
+        view.setInitialImageMaxSize(maxSize);
+    }
+
+    public void setDetectionFrameRate(int framesPerSecond) {
+        view.setDetectionFrameRate(framesPerSecond);
+    }
+
+    public void setDetectionThreadCount(int threadCount) {
+        view.setDetectionThreadCount(threadCount);
+    }
+
+    public void setRectangleTrackingEnabled(boolean enabled) {
+        view.setRectangleTrackingEnabled(enabled);
+    }
+
+    public void setRegionDetectionEnabled(boolean enabled) {
+        view.setRegionDetectionEnabled(enabled);
+    }
+
+    public void setContourRetrievalMode(String mode) {
+        view.setContourRetrievalMode(mode);
+    }
+
+    public void setDetectionEventThreshold(double threshold) {
+        view.setDetectionEventThreshold(threshold);
+    }
+
+    public void setDetectionEventHeartbeat(int milliseconds) {
+        view.setDetectionEventHeartbeat(milliseconds);
+    }
+
+    public void setAutoCaptureEnabled(boolean enabled) {
+        view.setAutoCaptureEnabled(enabled);
+    }
+
+    public void setAutoCaptureFrameCount(int frames) {
+        view.setAutoCaptureFrameCount(frames);
+    }
+
+    public void setAutoCaptureTolerance(double pixels) {
+        view.setAutoCaptureTolerance(pixels);
+    }
+
+    public void setMinimumSharpness(double sharpness) {
+        view.setMinimumSharpness(sharpness);
+    }
+
+    /**
+     Sets how often (in milliseconds) the pipeline metrics are sent to JS. 0
+     doesn't send them.
+     */
+    public void setPipelineMetricsInterval(int milliseconds) {
+        removeCallbacks(sendPipelineMetrics);
+        this.pipelineMetricsInterval = milliseconds;
+        if (milliseconds > 0) {
+            postDelayed(sendPipelineMetrics, milliseconds);
+        }
+    }
+
     public void startCamera() {
         view.startCamera();
     }
@@ -87,9 +187,18 @@ public class MainView extends FrameLayout {
       context.getJSModule(RCTEventEmitter.class).receiveEvent(getId(), "onTorchChanged", map);
     }
 
-    public void rectangleWasDetected(WritableMap detection) {
+    public void rectangleWasDetected(Quadrilateral rectangle, double sharpness) {
+      final ReactContext context = (ReactContext) getContext();
+      UIManagerModule uiManager = context.getNativeModule(UIManagerModule.class);
+      if (uiManager == null) {
+        return;
+      }
+      uiManager.getEventDispatcher().dispatchEvent(new RectangleDetectedEvent(getId(), rectangle, sharpness));
+    }
+
+    public void pipelineMetricsWereUpdated(WritableMap metrics) {
       final ReactContext context = (ReactContext) getContext();
-      context.getJSModule(RCTEventEmitter.class).receiveEvent(getId(), "onRectangleDetected", detection);
+      context.getJSModule(RCTEventEmitter.class).receiveEvent(getId(), "onPipelineMetrics", metrics);
     }
 
     public void pictureWasTaken(WritableMap pictureDetails) {
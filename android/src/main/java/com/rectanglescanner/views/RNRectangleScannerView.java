@@ -7,18 +7,14 @@ import android.widget.FrameLayout;
 
 import com.rectanglescanner.R;
 import com.rectanglescanner.helpers.CapturedImage;
+import com.rectanglescanner.helpers.CapturedImageWriter;
+import com.rectanglescanner.helpers.Quadrilateral;
+import com.rectanglescanner.core.ImageEncoder;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.WritableNativeMap;
 
-import org.opencv.core.Core;
-import org.opencv.core.CvType;
-import org.opencv.core.Mat;
-import org.opencv.core.MatOfInt;
-import org.opencv.imgcodecs.Imgcodecs;
-
 import java.util.UUID;
 import java.io.File;
-import java.util.ArrayList;
 
 /**
   Created by Jake on Jan 6, 2020.
@@ -29,7 +25,8 @@ import java.util.ArrayList;
 */
 public class RNRectangleScannerView extends RectangleDetectionController {
     private String cacheFolderName = "RNRectangleScanner";
-    private double capturedQuality = 0.5;
+    private final ImageEncoder imageEncoder = new ImageEncoder();
+    private final CapturedImageWriter imageWriter = new CapturedImageWriter();
 
     //================================================================================
     // Setup
@@ -46,10 +43,38 @@ public class RNRectangleScannerView extends RectangleDetectionController {
     }
 
     /**
-    Sets the jpeg quality of the output image
+    Sets the jpeg and lossy webp quality of the output image
     */
     public void setCapturedQuality(double quality) {
-      this.capturedQuality = quality;
+      this.imageEncoder.setQuality(quality);
+    }
+
+    /**
+    Sets the format of the output image, jpeg, webp or png
+    */
+    public void setOutputFormat(String format) {
+      this.imageEncoder.setFormat(format);
+    }
+
+    /**
+    Sets if webp output images are lossless
+    */
+    public void setOutputLossless(boolean lossless) {
+      this.imageEncoder.setLossless(lossless);
+    }
+
+    /**
+    Sets the png compression level of the output image from 0 to 9
+    */
+    public void setOutputCompressionLevel(int compressionLevel) {
+      this.imageEncoder.setCompressionLevel(compressionLevel);
+    }
+
+    /**
+    Sets if the output images are saved as single channel greyscale
+    */
+    public void setOutputGrayscale(boolean grayscale) {
+      this.imageEncoder.setGrayscale(grayscale);
     }
 
     /**
@@ -107,62 +132,137 @@ public class RNRectangleScannerView extends RectangleDetectionController {
      Called after a frame is processed and a rectangle was found
      */
     @Override
-    public void rectangleWasDetected(WritableMap detection) {
-      this.parentView.rectangleWasDetected(detection);
+    public void rectangleWasDetected(Quadrilateral rectangle, double sharpness) {
+      this.parentView.rectangleWasDetected(rectangle, sharpness);
     }
 
 
     /**
-     After an image is captured and cropped, this method is called
+     After an image is captured and cropped, this method is called. The images
+     are handed to the image writer, which encodes them in parallel and releases
+     them. onPictureProcessed is sent as each image is written.
      */
     @Override
     public void onProcessedCapturedImage(CapturedImage capturedImage) {
       WritableMap pictureWasTakenConfig = new WritableNativeMap();
-      WritableMap pictureWasProcessedConfig = new WritableNativeMap();
       String croppedImageFileName = null;
       String originalImageFileName = null;
       boolean hasCroppedImage = (capturedImage.processed != null);
+      // The settings can change while the images are written
+      ImageEncoder encoder = this.imageEncoder.copy();
       try {
-        originalImageFileName = generateStoredFileName("O");
+        originalImageFileName = generateStoredFileName("O", encoder);
         if (hasCroppedImage) {
-          croppedImageFileName = generateStoredFileName("C");
+          croppedImageFileName = generateStoredFileName("C", encoder);
         } else {
           croppedImageFileName = originalImageFileName;
         }
       } catch(Exception e) {
+        capturedImage.release();
         WritableMap folderError = new WritableNativeMap();
         folderError.putString("message", "Failed to create the cache directory");
         pictureDidFailToProcess(folderError);
         return;
       }
 
-      pictureWasTakenConfig.putString("croppedImage", "file://" + croppedImageFileName);
-      pictureWasTakenConfig.putString("initialImage", "file://" + originalImageFileName);
-      pictureWasProcessedConfig.putString("croppedImage", "file://" + croppedImageFileName);
-      pictureWasProcessedConfig.putString("initialImage", "file://" + originalImageFileName);
+      String croppedImageUri = "file://" + croppedImageFileName;
+      String initialImageUri = "file://" + originalImageFileName;
+      pictureWasTakenConfig.putString("croppedImage", croppedImageUri);
+      pictureWasTakenConfig.putString("initialImage", initialImageUri);
       pictureWasTaken(pictureWasTakenConfig);
 
-      if (hasCroppedImage && !this.saveToDirectory(capturedImage.processed, croppedImageFileName)) {
-        WritableMap fileError = new WritableNativeMap();
-        fileError.putString("message", "Failed to write cropped image to cache");
-        fileError.putString("filePath", croppedImageFileName);
-        pictureDidFailToProcess(fileError);
-        return;
+      CaptureWrites writes = new CaptureWrites(croppedImageUri, initialImageUri, hasCroppedImage);
+      if (hasCroppedImage) {
+        this.imageWriter.writeLater(capturedImage.processed, CapturedImage.NO_ROTATION, croppedImageFileName, encoder,
+          imageWriterCallback("croppedImage", "cropped", writes));
       }
-      if (!this.saveToDirectory(capturedImage.original, originalImageFileName)) {
-        WritableMap fileError = new WritableNativeMap();
-        fileError.putString("message", "Failed to write original image to cache");
-        fileError.putString("filePath", originalImageFileName);
-        pictureDidFailToProcess(fileError);
-        return;
+      this.imageWriter.writeLater(capturedImage.original, capturedImage.originalRotation, originalImageFileName, encoder,
+        imageWriterCallback("initialImage", "original", writes));
+    }
+
+    /**
+     The state of the images of one capture while they are written. Once a
+     write fails, nothing more of the capture is sent as processed.
+     */
+    private static class CaptureWrites {
+      final String croppedImageUri;
+      final String initialImageUri;
+      final boolean hasCroppedImage;
+      int pendingImages;
+      boolean failed = false;
+      boolean croppedImageWritten = false;
+      boolean initialImageWritten = false;
+
+      CaptureWrites(String croppedImageUri, String initialImageUri, boolean hasCroppedImage) {
+        this.croppedImageUri = croppedImageUri;
+        this.initialImageUri = initialImageUri;
+        this.hasCroppedImage = hasCroppedImage;
+        this.pendingImages = hasCroppedImage ? 2 : 1;
       }
+    }
+
+    /**
+     Returns the callback of a written image, which sends onPictureProcessed
+     with the key of the image that was written and the uris of the images of
+     the capture written so far. The last image of a capture also has complete
+     set. After a failed write only the failure is sent.
+     */
+    private CapturedImageWriter.Callback imageWriterCallback(final String processedImage, final String imageName,
+        final CaptureWrites writes) {
+      return new CapturedImageWriter.Callback() {
+        @Override
+        public void imageWasWritten(String filePath) {
+          WritableMap pictureWasProcessedConfig = new WritableNativeMap();
+          synchronized (writes) {
+            writes.pendingImages--;
+            if (writes.failed) {
+              return;
+            }
+            if (processedImage.equals("croppedImage")) {
+              writes.croppedImageWritten = true;
+            } else {
+              writes.initialImageWritten = true;
+              // Without a rectangle the cropped image is the original
+              writes.croppedImageWritten = writes.croppedImageWritten || !writes.hasCroppedImage;
+            }
+            if (writes.croppedImageWritten) {
+              pictureWasProcessedConfig.putString("croppedImage", writes.croppedImageUri);
+            }
+            if (writes.initialImageWritten) {
+              pictureWasProcessedConfig.putString("initialImage", writes.initialImageUri);
+            }
+            pictureWasProcessedConfig.putString("processedImage", processedImage);
+            pictureWasProcessedConfig.putBoolean("complete", writes.pendingImages == 0);
+          }
+          pictureWasProcessed(pictureWasProcessedConfig);
+          Log.d(TAG, "Captured Image " + filePath);
+        }
+
+        @Override
+        public void imageDidFailToWrite(String filePath) {
+          synchronized (writes) {
+            writes.pendingImages--;
+            writes.failed = true;
+          }
+          WritableMap fileError = new WritableNativeMap();
+          fileError.putString("message", "Failed to write " + imageName + " image to cache");
+          fileError.putString("filePath", filePath);
+          pictureDidFailToProcess(fileError);
+        }
+      };
+    }
 
-      pictureWasProcessed(pictureWasProcessedConfig);
-      capturedImage.release();
-      Log.d(TAG, "Captured Images");
+    /**
+     Called if the captured image could not be decoded or processed
+     */
+    @Override
+    public void capturedImageDidFailToProcess(Exception e) {
+      WritableMap processingError = new WritableNativeMap();
+      processingError.putString("message", "Failed to process the captured image");
+      pictureDidFailToProcess(processingError);
     }
 
-    private String generateStoredFileName(String name) throws Exception {
+    private String generateStoredFileName(String name, ImageEncoder encoder) throws Exception {
       String folderDir = this.mContext.getCacheDir().toString();
       File folder = new File( folderDir + "/" + this.cacheFolderName);
       if (!folder.exists()) {
@@ -174,26 +274,7 @@ public class RNRectangleScannerView extends RectangleDetectionController {
             throw new Exception("Failed to create the cache directory");
           }
       }
-      return folderDir + "/" + this.cacheFolderName + "/" + name + UUID.randomUUID() + ".png";
-    }
-
-    /**
-    Saves a file to a folder
-    */
-    private boolean saveToDirectory(Mat doc, String fileName) {
-        Mat endDoc = new Mat(doc.size(), CvType.CV_8UC4);
-        doc.copyTo(endDoc);
-        Core.flip(doc.t(), endDoc, 1);
-        ArrayList<Integer> parameters = new ArrayList();
-        parameters.add(Imgcodecs.IMWRITE_JPEG_QUALITY);
-        parameters.add((int)(this.capturedQuality * 100));
-        MatOfInt par = new MatOfInt();
-        par.fromList(parameters);
-        boolean success = Imgcodecs.imwrite(fileName, endDoc, par);
-
-        endDoc.release();
-
-        return success;
+      return folderDir + "/" + this.cacheFolderName + "/" + name + UUID.randomUUID() + encoder.getFileExtension();
     }
 
 }
@@ -0,0 +1,83 @@
+package com.rectanglescanner.views;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.uimanager.events.Event;
+import com.facebook.react.uimanager.events.RCTEventEmitter;
+
+import com.rectanglescanner.helpers.Quadrilateral;
+
+/**
+  The result of detecting a rectangle on a preview frame, sent to JS as
+  onRectangleDetected.
+
+  The corners are sent as a flat array of 8 numbers (x, y pairs in the order
+  of QuadGeometry) with the width and height of the image they are on, or
+  null when no rectangle was detected, and the sharpness of the frame. The JS
+  component turns it back into the detectedRectangle object.
+
+  Detection events coalesce, so if JS hasn't received the previous one yet
+  it is replaced by the newer one instead of queueing up.
+ */
+public class RectangleDetectedEvent extends Event<RectangleDetectedEvent> {
+
+    public static final String EVENT_NAME = "onRectangleDetected";
+
+    private final double[] corners;
+    private final double width;
+    private final double height;
+    private final double sharpness;
+
+    public RectangleDetectedEvent(int viewTag, Quadrilateral rectangle, double sharpness) {
+        super(viewTag);
+        this.sharpness = sharpness;
+        if (rectangle != null) {
+            this.corners = rectangle.corners.clone();
+            this.width = rectangle.sourceSize.width;
+            this.height = rectangle.sourceSize.height;
+        } else {
+            this.corners = null;
+            this.width = 0;
+            this.height = 0;
+        }
+    }
+
+    @Override
+    public String getEventName() {
+        return EVENT_NAME;
+    }
+
+    @Override
+    public boolean canCoalesce() {
+        return true;
+    }
+
+    @Override
+    public short getCoalescingKey() {
+        return 0;
+    }
+
+    @Override
+    public void dispatch(RCTEventEmitter rctEventEmitter) {
+        rctEventEmitter.receiveEvent(getViewTag(), getEventName(), serializeEventData());
+    }
+
+    private WritableMap serializeEventData() {
+        WritableMap eventData = Arguments.createMap();
+        eventData.putDouble("sharpness", this.sharpness);
+        if (this.corners == null) {
+            eventData.putNull("corners");
+            return eventData;
+        }
+
+        WritableArray corners = Arguments.createArray();
+        for (double value : this.corners) {
+            corners.pushDouble(value);
+        }
+        eventData.putArray("corners", corners);
+        eventData.putDouble("width", this.width);
+        eventData.putDouble("height", this.height);
+        return eventData;
+    }
+}
@@ -11,13 +11,25 @@ import android.view.WindowManager;
 import android.widget.FrameLayout;
 
 import com.rectanglescanner.R;
+import com.rectanglescanner.core.ContourSelector;
+import com.rectanglescanner.core.DetectionEventFilter;
+import com.rectanglescanner.core.FrameReorderBuffer;
+import com.rectanglescanner.core.PreviewFrameScheduler;
+import com.rectanglescanner.core.StabilityDetector;
 import com.rectanglescanner.helpers.ImageProcessor;
 import com.rectanglescanner.helpers.ImageProcessorMessage;
 import com.rectanglescanner.helpers.CapturedImage;
-import com.facebook.react.bridge.WritableMap;
+import com.rectanglescanner.helpers.CaptureProcessor;
+import com.rectanglescanner.helpers.PipelineMetrics;
+import com.rectanglescanner.helpers.QuadTracker;
+import com.rectanglescanner.helpers.Quadrilateral;
 
 import org.opencv.android.OpenCVLoader;
-import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+
 
 /**
   Created by Jake on Jan 6, 2020.
@@ -26,16 +38,50 @@ import org.opencv.core.Mat;
   rectangles from the output. On capture, it will also crop the image.
 */
 public class RectangleDetectionController extends CameraDeviceController {
-    private HandlerThread mImageThread;
-    private ImageProcessor mImageProcessor;
-    private int numberOfRectangles = 15;
-    private boolean imageProcessorBusy = true;
-    private int filterId = 1;
+    // Results of frames that finished before an earlier frame are held back
+    // until then, the oldest ones are sent anyway past this many
+    private static final int MAX_HELD_FRAME_RESULTS = 16;
+    private static final int FRAME_DETECTED = 0;
+    private static final int FRAME_TOO_BLURRY = 1;
+    private static final int FRAME_LOST = 2;
 
-    public void setImageProcessorBusy(boolean isBusy) {
-      this.imageProcessorBusy = isBusy;
+    /**
+    The result of a preview frame waiting to be sent in frame order
+    */
+    private static class FrameResult {
+        final int status;
+        final Quadrilateral rectangle;
+        final double sharpness;
+
+        FrameResult(int status, Quadrilateral rectangle, double sharpness) {
+            this.status = status;
+            this.rectangle = rectangle;
+            this.sharpness = sharpness;
+        }
     }
 
+    private CaptureProcessor mCaptureProcessor;
+    private volatile boolean imageProcessorsReady = false;
+    private int numberOfRectangles = 15;
+    private final PreviewFrameScheduler<ImageProcessor> mFrameScheduler = new PreviewFrameScheduler<>();
+    // Every running detection thread's processor, also the lock for starting and stopping them
+    private final ArrayList<ImageProcessor> mImageProcessors = new ArrayList<>();
+    private int filterId = 1;
+    private int detectionResolution = 0;
+    private int croppedImageMaxSize = 0;
+    private int initialImageMaxSize = 0;
+    private int detectionThreadCount = 1;
+    private volatile Quadrilateral lastDetectedRectangle = null;
+    private final QuadTracker mQuadTracker = new QuadTracker();
+    private volatile boolean rectangleTrackingEnabled = false;
+    private volatile boolean regionDetectionEnabled = false;
+    private volatile int contourRetrievalMode = Imgproc.RETR_LIST;
+    private final DetectionEventFilter mDetectionEventFilter = new DetectionEventFilter();
+    private final StabilityDetector mStabilityDetector = new StabilityDetector();
+    private volatile boolean autoCaptureEnabled = false;
+    private volatile double minimumSharpness = 0;
+    private final FrameReorderBuffer<FrameResult> mFrameResults = new FrameReorderBuffer<>(MAX_HELD_FRAME_RESULTS);
+
     public int getFilterId() {
       return this.filterId;
     }
@@ -47,6 +93,156 @@ public class RectangleDetectionController extends CameraDeviceController {
       this.filterId = filterId;
     }
 
+    public int getDetectionResolution() {
+      return this.detectionResolution;
+    }
+
+    /**
+     Sets the max length of the longest edge of the image used to detect
+     rectangles. 0 uses the full preview resolution.
+     */
+    public void setDetectionResolution(int maxSize) {
+      this.detectionResolution = maxSize;
+    }
+
+    /**
+     Sets the max length of the longest edge of the cropped image. 0 keeps
+     the cropped image at the size of the document in the captured image.
+     */
+    public void setCroppedImageMaxSize(int maxSize) {
+      this.croppedImageMaxSize = maxSize;
+    }
+
+    /**
+     Sets the max length of the longest edge of the initial image. 0 keeps
+     the full size of the captured image.
+     */
+    public void setInitialImageMaxSize(int maxSize) {
+      this.initialImageMaxSize = maxSize;
+    }
+
+    /**
+     Sets how many threads detect rectangles on preview frames at the same time
+     */
+    public void setDetectionThreadCount(int threadCount) {
+      this.detectionThreadCount = Math.max(1, threadCount);
+      mFrameScheduler.setMaxActiveWorkers(this.detectionThreadCount);
+      if (this.imageProcessorsReady) {
+        startDetectionThreads();
+        stopSurplusDetectionThreads();
+      }
+    }
+
+    public boolean isRectangleTrackingEnabled() {
+      return this.rectangleTrackingEnabled;
+    }
+
+    /**
+     Enables following the last detected rectangle between frames with optical
+     flow instead of running the full detection on every frame
+     */
+    public void setRectangleTrackingEnabled(boolean enabled) {
+      this.rectangleTrackingEnabled = enabled;
+      if (!enabled) {
+        mQuadTracker.release();
+      }
+    }
+
+    public boolean isRegionDetectionEnabled() {
+      return this.regionDetectionEnabled;
+    }
+
+    /**
+     Enables searching the area around the last detected rectangle before
+     searching the whole frame
+     */
+    public void setRegionDetectionEnabled(boolean enabled) {
+      this.regionDetectionEnabled = enabled;
+    }
+
+    public int getContourRetrievalMode() {
+      return this.contourRetrievalMode;
+    }
+
+    /**
+     Sets how contours are retrieved from the edges of the frame (external,
+     list or tree). External only finds the outermost contours, which is the
+     cheapest but misses a document drawn inside another outline.
+     */
+    public void setContourRetrievalMode(String mode) {
+      this.contourRetrievalMode = ContourSelector.getRetrievalMode(mode);
+    }
+
+    /**
+     Sets how many pixels a corner has to move before a new detection is sent.
+     Found and lost rectangles are always sent. 0 sends every detection.
+     */
+    public void setDetectionEventThreshold(double threshold) {
+      mDetectionEventFilter.setThreshold(threshold);
+    }
+
+    /**
+     Sets the max milliseconds between sent detections while the rectangle
+     doesn't change. 0 doesn't resend unchanged detections.
+     */
+    public void setDetectionEventHeartbeat(int milliseconds) {
+      mDetectionEventFilter.setHeartbeat(milliseconds);
+    }
+
+    /**
+     Enables capturing an image as soon as the detected rectangle holds steady
+     */
+    public void setAutoCaptureEnabled(boolean enabled) {
+      this.autoCaptureEnabled = enabled;
+      mStabilityDetector.reset();
+    }
+
+    /**
+     Sets how many detections in a row have to be steady before auto capturing
+     */
+    public void setAutoCaptureFrameCount(int frames) {
+      mStabilityDetector.setWindowSize(frames);
+    }
+
+    /**
+     Sets how much (in pixels) the corners can move while still being steady
+     */
+    public void setAutoCaptureTolerance(double pixels) {
+      mStabilityDetector.setTolerance(pixels);
+    }
+
+    public double getMinimumSharpness() {
+      return this.minimumSharpness;
+    }
+
+    /**
+     Sets the minimum sharpness (variance of the Laplacian of the detection
+     image) a frame needs to be detected on. Blurrier frames are skipped and
+     hold off auto capture. 0 detects on every frame.
+     */
+    public void setMinimumSharpness(double sharpness) {
+      this.minimumSharpness = sharpness;
+    }
+
+    public QuadTracker getQuadTracker() {
+      return mQuadTracker;
+    }
+
+    /**
+     Returns the last rectangle that was detected in the preview or null
+     */
+    public Quadrilateral getLastDetectedRectangle() {
+      return this.lastDetectedRectangle;
+    }
+
+    /**
+     Sets the max number of preview frames per second to detect rectangles on.
+     0 detects on the newest frame as soon as the previous one is done.
+     */
+    public void setDetectionFrameRate(int framesPerSecond) {
+      mFrameScheduler.setTargetFrameRate(framesPerSecond);
+    }
+
     //================================================================================
     // Setup
     //================================================================================
@@ -75,15 +271,97 @@ public class RectangleDetectionController extends CameraDeviceController {
             return;
         }
 
-        if (mImageThread == null) {
-            mImageThread = new HandlerThread("Worker Thread");
-            mImageThread.start();
+        if (mCaptureProcessor == null) {
+            mCaptureProcessor = new CaptureProcessor(this);
         }
 
-        if (mImageProcessor == null) {
-            mImageProcessor = new ImageProcessor(mImageThread.getLooper(), this, mContext);
+        startDetectionThreads();
+        this.imageProcessorsReady = true;
+    }
+
+    /**
+     Stops the capture session. The tracked rectangle is dropped since the next
+     frames may not follow the last one, and the next detection is always sent.
+     */
+    @Override
+    public void stopCamera() {
+        super.stopCamera();
+        mQuadTracker.release();
+        mDetectionEventFilter.reset();
+        mStabilityDetector.reset();
+    }
+
+    /**
+     Starts the capture session, restarting the detection threads if the
+     camera was cleaned up before
+     */
+    @Override
+    public void startCamera() {
+        if (mCaptureProcessor != null && !this.imageProcessorsReady) {
+            startDetectionThreads();
+            this.imageProcessorsReady = true;
+        }
+        super.startCamera();
+    }
+
+    /**
+     Cleans up the camera view, the detection threads and the tracked rectangle
+     */
+    @Override
+    public void cleanupCamera() {
+        this.imageProcessorsReady = false;
+        stopDetectionThreads();
+        super.cleanupCamera();
+        mQuadTracker.release();
+    }
+
+    /**
+    Starts detection threads until there are as many as the detection thread
+    count
+    */
+    private void startDetectionThreads() {
+        synchronized (mImageProcessors) {
+            for (int i = mImageProcessors.size(); i < this.detectionThreadCount; i++) {
+                HandlerThread detectionThread = new HandlerThread("Detection Thread " + i);
+                detectionThread.start();
+                ImageProcessor processor = new ImageProcessor(detectionThread.getLooper(), this, mFrameScheduler, mContext);
+                mImageProcessors.add(processor);
+                mFrameScheduler.addWorker(processor);
+            }
+        }
+    }
+
+    /**
+    Stops idle detection threads until there are as many as the detection
+    thread count. Busy threads are stopped once they finish their frame.
+    */
+    private void stopSurplusDetectionThreads() {
+        synchronized (mImageProcessors) {
+            while (mImageProcessors.size() > this.detectionThreadCount) {
+                ImageProcessor processor = mFrameScheduler.removeIdleWorker();
+                if (processor == null) {
+                    return;
+                }
+                mImageProcessors.remove(processor);
+                processor.quit();
+            }
+        }
+    }
+
+    /**
+    Stops every detection thread once its current frame is done
+    */
+    private void stopDetectionThreads() {
+        synchronized (mImageProcessors) {
+            for (ImageProcessor processor : mImageProcessors) {
+                processor.quit();
+            }
+            mImageProcessors.clear();
+            byte[] droppedFrame = mFrameScheduler.clearWorkers();
+            if (droppedFrame != null) {
+                releasePreviewBuffer(droppedFrame);
+            }
         }
-        this.setImageProcessorBusy(false);
     }
 
     //================================================================================
@@ -94,26 +372,145 @@ public class RectangleDetectionController extends CameraDeviceController {
      Runs each frame the image is being pushed to the preview layer
      */
     @Override
-    public void processOutput(Mat image) {
-      detectRectangleFromImageLater(image);
+    public void processOutput(byte[] frame) {
+      detectRectangleFromImageLater(frame);
+    }
+
+    /**
+     Looks for a rectangle in the given frame async. If the image processor is
+     busy, the frame waits for it and replaces any older frame that was waiting.
+     */
+    private void detectRectangleFromImageLater(byte[] frame) {
+      if (!this.imageProcessorsReady) {
+        releasePreviewBuffer(frame);
+        return;
+      }
+
+      byte[] droppedFrame = mFrameScheduler.offer(frame, System.nanoTime());
+      if (droppedFrame != null) {
+        PipelineMetrics.increment(PipelineMetrics.FRAMES_DROPPED);
+        releasePreviewBuffer(droppedFrame);
+      }
+      ImageProcessor detectionProcessor = mFrameScheduler.claimIdleWorker();
+      if (detectionProcessor != null) {
+        sendPreviewFrameMessage(detectionProcessor);
+      }
+    }
+
+    private void sendPreviewFrameMessage(ImageProcessor detectionProcessor) {
+      Message msg = detectionProcessor.obtainMessage();
+      msg.obj = new ImageProcessorMessage("previewFrame");
+      detectionProcessor.sendMessage(msg);
+    }
+
+    /**
+     Called by an image processor after it finished a preview frame
+     */
+    public void previewFrameWasProcessed(ImageProcessor detectionProcessor) {
+      synchronized (mImageProcessors) {
+        if (!mImageProcessors.contains(detectionProcessor)) {
+          // Stopped while it was processing the frame
+          return;
+        }
+
+        if (mFrameScheduler.retireWorker(detectionProcessor)) {
+          mImageProcessors.remove(detectionProcessor);
+          detectionProcessor.quit();
+          ImageProcessor idleProcessor = mFrameScheduler.claimIdleWorker();
+          if (idleProcessor != null) {
+            sendPreviewFrameMessage(idleProcessor);
+          }
+        } else if (mFrameScheduler.finishFrame(detectionProcessor)) {
+          sendPreviewFrameMessage(detectionProcessor);
+        }
+      }
+    }
+
+    /**
+     Called by an image processor with the result of a preview frame
+     */
+    public void rectangleWasDetectedInFrame(long frameNumber, Quadrilateral rectangle, double sharpness) {
+      addFrameResult(frameNumber, new FrameResult(FRAME_DETECTED, rectangle, sharpness));
+    }
+
+    /**
+     Called by an image processor when a frame was too blurry to detect on
+     */
+    public void blurryFrameWasSkipped(long frameNumber) {
+      PipelineMetrics.increment(PipelineMetrics.FRAMES_TOO_BLURRY);
+      addFrameResult(frameNumber, new FrameResult(FRAME_TOO_BLURRY, null, 0));
+    }
+
+    /**
+     Called by an image processor when a frame failed before it had a result,
+     so the frames after it don't wait for it
+     */
+    public void frameWasLost(long frameNumber) {
+      addFrameResult(frameNumber, new FrameResult(FRAME_LOST, null, 0));
+    }
+
+    /**
+     Frames are processed on several threads, so a result that finishes before
+     the result of an earlier frame is held until that one is added, and the
+     results are sent in frame order
+     */
+    private synchronized void addFrameResult(long frameNumber, FrameResult result) {
+      if (frameNumber != mFrameResults.getNextFrameNumber()) {
+        PipelineMetrics.increment(PipelineMetrics.FRAMES_OUT_OF_ORDER);
+      }
+      if (!mFrameResults.add(frameNumber, result)) {
+        // Its frame was given up on, or the frame failed after its result was added
+        if (result.rectangle != null) {
+          result.rectangle.release();
+        }
+        return;
+      }
+
+      FrameResult nextResult;
+      while ((nextResult = mFrameResults.poll()) != null) {
+        if (nextResult.status == FRAME_DETECTED) {
+          sendFrameResult(nextResult.rectangle, nextResult.sharpness);
+        } else if (nextResult.status == FRAME_TOO_BLURRY) {
+          // The last detected rectangle is kept, but auto capture has to wait
+          // for a full window of sharp steady frames again
+          mStabilityDetector.interrupt();
+        }
+      }
     }
 
     /**
-     Looks for a rectangle in the given image async
+     Sets the last detected rectangle of the next frame in order and sends it
+     unless the detection event filter holds it back
      */
-    private void detectRectangleFromImageLater(Mat image) {
-      if (!imageProcessorBusy) {
-          setImageProcessorBusy(true);
-          Message msg = mImageProcessor.obtainMessage();
-          msg.obj = new ImageProcessorMessage("previewFrame", image);
-          mImageProcessor.sendMessageDelayed(msg, 100);
+    private void sendFrameResult(Quadrilateral rectangle, double sharpness) {
+      double[] corners = rectangle != null ? rectangle.corners : null;
+      Size sourceSize = rectangle != null ? rectangle.sourceSize : null;
+      Quadrilateral previousRectangle = this.lastDetectedRectangle;
+      this.lastDetectedRectangle = rectangle;
+      if (previousRectangle != null) {
+        previousRectangle.release();
+      }
+
+      if (this.autoCaptureEnabled && mStabilityDetector.update(corners, sourceSize)) {
+        autoCaptureImageLater();
+      }
+
+      if (mDetectionEventFilter.shouldSend(corners, sourceSize, System.nanoTime())) {
+        long startTime = PipelineMetrics.start();
+        rectangleWasDetected(rectangle, sharpness);
+        PipelineMetrics.record(PipelineMetrics.SEND_DETECTION, startTime);
+        PipelineMetrics.increment(PipelineMetrics.DETECTIONS_SENT);
+      } else {
+        PipelineMetrics.increment(PipelineMetrics.DETECTIONS_SUPPRESSED);
       }
     }
 
     /**
-     Called after a frame is processed and a rectangle was found
+     Called after a frame is processed with the rectangle that was found or null
+     and the frame's sharpness. The rectangle may be released once a newer one
+     is detected, so anything needed from it has to be copied before this returns.
      */
-    public void rectangleWasDetected(WritableMap detection) {}
+    public void rectangleWasDetected(Quadrilateral rectangle, double sharpness) {}
 
     //================================================================================
     // Capture Image
@@ -123,17 +520,39 @@ public class RectangleDetectionController extends CameraDeviceController {
     After an image is captured, this fuction is called and handles cropping the image
     */
     @Override
-    public void handleCapturedImage(Mat capturedImage) {
-      setImageProcessorBusy(true);
-      Message msg = mImageProcessor.obtainMessage();
-      msg.obj = new ImageProcessorMessage("pictureTaken", capturedImage);
-      mImageProcessor.sendMessageAtFrontOfQueue(msg);
+    public void handleCapturedImage(byte[] jpegData) {
+      if (mCaptureProcessor == null) {
+        return;
+      }
+      mCaptureProcessor.processCapturedImageLater(jpegData, getLastDetectedRectangle(), getFilterId(), this.lastDetectedRotation,
+        this.croppedImageMaxSize, this.initialImageMaxSize);
+    }
+
+    /**
+     Captures an image from the main thread. Called from a detection thread
+     on the frame the rectangle became steady.
+     */
+    private void autoCaptureImageLater() {
+      post(new Runnable() {
+        @Override
+        public void run() {
+          captureImageLater();
+        }
+      });
     }
 
     /**
-     After an image is captured and cropped, this method is called
+     After an image is captured and cropped, this method is called. The
+     captured image belongs to this method from here on and has to be released.
      */
     public void onProcessedCapturedImage(CapturedImage scannedDocument) {
+      scannedDocument.release();
+    }
+
+    /**
+     Called if the captured image could not be decoded or processed
+     */
+    public void capturedImageDidFailToProcess(Exception e) {
 
     }
 }
@@ -0,0 +1,143 @@
+package com.rectanglescanner.benchmark;
+
+import com.rectanglescanner.core.DocumentWarper;
+import com.rectanglescanner.core.ImageFilters;
+import com.rectanglescanner.core.MatAllocator;
+import com.rectanglescanner.core.QuadGeometry;
+import com.rectanglescanner.core.RectangleDetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+  Benchmarks the processing of a captured image: the perspective transform of
+  the document and each of the filters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CaptureBenchmark {
+
+    // Longest edge of the image the document corners are detected on, like a preview frame
+    private static final int DETECTION_RESOLUTION = 640;
+    // Inset of the corners used when no document is found in the image
+    private static final double FALLBACK_INSET = 0.1;
+
+    @Param({"synthetic", "photo.jpeg", "black-and-white.jpeg"})
+    public String source;
+
+    @Param({"1920x1080", "4032x3024"})
+    public String resolution;
+
+    private Mat image;
+    private double[] corners;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FrameCorpus.loadOpenCV();
+        this.image = FrameCorpus.colorFrame(this.source, this.resolution);
+        this.corners = findCorners(this.image);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.image.release();
+    }
+
+    @Benchmark
+    public Mat fourPointTransform() {
+        Mat doc = DocumentWarper.fourPointTransform(this.image, this.corners, 0);
+        doc.release();
+        return doc;
+    }
+
+    @Benchmark
+    public Mat greyscaleFilter(WorkingImage working) {
+        return ImageFilters.applyGreyscaleFilterToImage(working.image);
+    }
+
+    @Benchmark
+    public Mat colorFilter(WorkingImage working) {
+        return ImageFilters.applyColorFilterToImage(working.image);
+    }
+
+    @Benchmark
+    public Mat blackAndWhiteFilter(WorkingImage working) {
+        return ImageFilters.applyBlackAndWhiteFilterToImage(working.image);
+    }
+
+    /**
+    Detects the document on a preview sized copy of the image and scales the
+    corners up to the image. The corners stay in the orientation of the image,
+    like the corners a captured image is cropped to.
+    */
+    private static double[] findCorners(Mat image) {
+        Size srcSize = image.size();
+        double detectionScale = RectangleDetector.getDetectionScale(srcSize, DETECTION_RESOLUTION);
+        Size size = new Size(Math.round(srcSize.width * detectionScale), Math.round(srcSize.height * detectionScale));
+
+        RectangleDetector detector = new RectangleDetector(MatAllocator.UNPOOLED);
+        Mat grayImage = detector.getGrayImage(image, size);
+        double[] corners = new double[8];
+        MatOfPoint contour = detector.detect(grayImage, QuadGeometry.ROTATION_90, corners);
+        grayImage.release();
+        detector.release();
+
+        if (contour == null) {
+            double insetX = srcSize.width * FALLBACK_INSET;
+            double insetY = srcSize.height * FALLBACK_INSET;
+            return new double[] {
+                insetX, insetY,
+                srcSize.width - insetX, insetY,
+                srcSize.width - insetX, srcSize.height - insetY,
+                insetX, srcSize.height - insetY,
+            };
+        }
+        contour.release();
+        QuadGeometry.scale(corners, 4, 1 / detectionScale, corners);
+        return corners;
+    }
+
+    /**
+    The filters change the image in place, so every call gets a fresh copy of
+    the captured image
+    */
+    @State(Scope.Thread)
+    public static class WorkingImage {
+        Mat image;
+
+        @Setup(Level.Invocation)
+        public void copy(CaptureBenchmark benchmark) {
+            if (this.image == null) {
+                this.image = new Mat();
+            }
+            benchmark.image.copyTo(this.image);
+        }
+
+        @TearDown(Level.Trial)
+        public void release() {
+            if (this.image != null) {
+                this.image.release();
+            }
+        }
+    }
+}
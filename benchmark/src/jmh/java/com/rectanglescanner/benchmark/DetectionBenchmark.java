@@ -0,0 +1,150 @@
+package com.rectanglescanner.benchmark;
+
+import com.rectanglescanner.core.ContourSelector;
+import com.rectanglescanner.core.MatAllocator;
+import com.rectanglescanner.core.QuadGeometry;
+import com.rectanglescanner.core.RectangleDetector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+  Benchmarks the steps of the rectangle detection on a greyscale preview
+  frame: finding the contours, picking the rectangle out of them and sorting
+  the corners of a polygon.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetectionBenchmark {
+
+    @Param({"synthetic", "photo.jpeg", "black-and-white.jpeg"})
+    public String source;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    // The screen rotation as a QuadGeometry rotation, 0 is a phone held upright
+    @Param({"0"})
+    public int rotation;
+
+    private RectangleDetector detector;
+    private Mat grayImage;
+    private List<MatOfPoint> selectedContours;
+    private double[] polygon;
+    private int polygonCount;
+    private final double[] corners = new double[8];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FrameCorpus.loadOpenCV();
+        this.detector = new RectangleDetector(MatAllocator.UNPOOLED);
+        this.grayImage = FrameCorpus.grayFrame(this.source, this.resolution);
+        double minArea = RectangleDetector.getMinimumContourArea(this.grayImage.size(), this.rotation);
+        this.selectedContours = ContourSelector.select(this.detector.findContours(this.grayImage, new Point(0, 0)), minArea);
+        readBiggestPolygon();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (MatOfPoint contour : this.selectedContours) {
+            contour.release();
+        }
+        this.grayImage.release();
+        this.detector.release();
+    }
+
+    @Benchmark
+    public int findContours() {
+        ArrayList<MatOfPoint> contours = this.detector.findContours(this.grayImage, new Point(0, 0));
+        int count = contours.size();
+        for (MatOfPoint contour : contours) {
+            contour.release();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public boolean getQuadrilateral(ContourCopies contours) {
+        MatOfPoint contour = this.detector.findQuadrilateral(contours.copies, this.grayImage.size(), this.rotation, this.corners);
+        if (contour == null) {
+            return false;
+        }
+        contour.release();
+        return true;
+    }
+
+    @Benchmark
+    public void sortCorners(Blackhole blackhole) {
+        QuadGeometry.sortCorners(this.polygon, this.polygonCount, this.corners);
+        blackhole.consume(this.corners);
+    }
+
+    /**
+    Keeps every point of the biggest contour as the polygon to sort, which is
+    the most points sortCorners could be given for this frame
+    */
+    private void readBiggestPolygon() {
+        if (this.selectedContours.isEmpty()) {
+            Size size = this.grayImage.size();
+            this.polygon = new double[] {0, 0, size.width, 0, size.width, size.height, 0, size.height};
+            this.polygonCount = 4;
+            return;
+        }
+
+        MatOfPoint2f points = new MatOfPoint2f();
+        this.selectedContours.get(0).convertTo(points, CvType.CV_32F);
+        this.polygonCount = points.rows();
+        float[] buffer = new float[this.polygonCount * 2];
+        points.get(0, 0, buffer);
+        this.polygon = new double[buffer.length];
+        for (int i = 0; i < buffer.length; i++) {
+            this.polygon[i] = buffer[i];
+        }
+        points.release();
+    }
+
+    /**
+    getQuadrilateral releases the contours it is given, so every call gets its
+    own copies of the selected contours
+    */
+    @State(Scope.Thread)
+    public static class ContourCopies {
+        final ArrayList<MatOfPoint> copies = new ArrayList<>();
+
+        @Setup(Level.Invocation)
+        public void copy(DetectionBenchmark benchmark) {
+            this.copies.clear();
+            for (MatOfPoint contour : benchmark.selectedContours) {
+                MatOfPoint copy = new MatOfPoint();
+                contour.copyTo(copy);
+                this.copies.add(copy);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.rectanglescanner.benchmark;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+  The frames the benchmarks run on. Frames are in the camera sensor's
+  landscape orientation like the preview frames and captures on a phone.
+
+  The synthetic frame is a document in perspective on a noisy table, drawn
+  from a fixed seed so every run measures the same image. Any other source is
+  the name of a recorded photo in the images folder of the repository (or the
+  folder set by the rectanglescanner.images system property), resized to the
+  resolution.
+ */
+public class FrameCorpus {
+
+    public static final String SYNTHETIC = "synthetic";
+
+    private static final String IMAGES_PROPERTY = "rectanglescanner.images";
+    private static final int SEED = 20200106;
+
+    private static boolean loaded = false;
+
+    /**
+    Loads the desktop OpenCV native library once per JVM
+    */
+    public static synchronized void loadOpenCV() {
+        if (!loaded) {
+            nu.pattern.OpenCV.loadLocally();
+            loaded = true;
+        }
+    }
+
+    /**
+    Returns a color (BGR) frame of the source at the resolution, like a decoded capture
+    */
+    public static Mat colorFrame(String source, String resolution) {
+        Size size = parseResolution(resolution);
+        if (SYNTHETIC.equals(source)) {
+            return syntheticFrame(size);
+        }
+        return recordedFrame(source, size);
+    }
+
+    /**
+    Returns a greyscale frame of the source at the resolution, like the luma
+    plane of a preview frame
+    */
+    public static Mat grayFrame(String source, String resolution) {
+        Mat color = colorFrame(source, resolution);
+        Mat gray = new Mat();
+        Imgproc.cvtColor(color, gray, Imgproc.COLOR_BGR2GRAY);
+        color.release();
+        return gray;
+    }
+
+    /**
+    Returns the size of a resolution written as widthxheight
+    */
+    public static Size parseResolution(String resolution) {
+        String[] parts = resolution.split("x");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Resolution must be widthxheight: " + resolution);
+        }
+        return new Size(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    private static Mat syntheticFrame(Size size) {
+        int width = (int) size.width;
+        int height = (int) size.height;
+
+        // A noisy, slightly blurred table so the edge detection finds clutter
+        Mat frame = new Mat(height, width, CvType.CV_8UC3);
+        Core.setRNGSeed(SEED);
+        Core.randn(frame, 110, 24);
+        Imgproc.GaussianBlur(frame, frame, new Size(3, 3), 0);
+
+        // A document in perspective covering about half of the frame
+        MatOfPoint document = new MatOfPoint(
+            new Point(width * 0.27, height * 0.18),
+            new Point(width * 0.74, height * 0.22),
+            new Point(width * 0.70, height * 0.84),
+            new Point(width * 0.24, height * 0.79));
+        Imgproc.fillPoly(frame, Arrays.asList(document), new Scalar(236, 238, 240), Imgproc.LINE_AA);
+
+        // Lines of text on the document
+        double lineHeight = Math.max(2, height / 60.0);
+        for (double y = 0.28; y < 0.74; y += 0.04) {
+            Point start = new Point(width * 0.31, height * y);
+            Point end = new Point(width * 0.66, height * (y + 0.006));
+            Imgproc.line(frame, start, end, new Scalar(40, 40, 40), (int) Math.max(1, lineHeight / 3), Imgproc.LINE_AA);
+        }
+        document.release();
+        return frame;
+    }
+
+    private static Mat recordedFrame(String name, Size size) {
+        File file = new File(System.getProperty(IMAGES_PROPERTY, "../images"), name);
+        Mat image = Imgcodecs.imread(file.getAbsolutePath(), Imgcodecs.IMREAD_COLOR);
+        if (image.empty()) {
+            throw new IllegalStateException("Could not decode " + file);
+        }
+
+        if (image.rows() > image.cols()) {
+            // Photos are stored upright, frames come in the sensor's orientation
+            Core.rotate(image, image, Core.ROTATE_90_CLOCKWISE);
+        }
+        Mat frame = new Mat();
+        int interpolation = image.cols() > size.width ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR;
+        Imgproc.resize(image, frame, size, 0, 0, interpolation);
+        image.release();
+        return frame;
+    }
+}
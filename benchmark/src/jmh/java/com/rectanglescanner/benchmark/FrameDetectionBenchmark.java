@@ -0,0 +1,91 @@
+package com.rectanglescanner.benchmark;
+
+import com.rectanglescanner.core.MatAllocator;
+import com.rectanglescanner.core.RectangleDetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+  Benchmarks the whole detection of a preview frame the way ImageProcessor
+  runs it: scaling the luma plane down to the detection resolution, measuring
+  the sharpness and finding the rectangle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDetectionBenchmark {
+
+    @Param({"synthetic", "photo.jpeg", "black-and-white.jpeg"})
+    public String source;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    // Longest edge of the detection image, 0 detects at the frame size
+    @Param({"0", "480"})
+    public int detectionResolution;
+
+    // The screen rotation as a QuadGeometry rotation, 0 is a phone held upright
+    @Param({"0"})
+    public int rotation;
+
+    private final MatAllocator allocator = MatAllocator.UNPOOLED;
+    private RectangleDetector detector;
+    private Mat frame;
+    private final double[] corners = new double[8];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FrameCorpus.loadOpenCV();
+        this.detector = new RectangleDetector(this.allocator);
+        this.frame = FrameCorpus.grayFrame(this.source, this.resolution);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.frame.release();
+        this.detector.release();
+    }
+
+    @Benchmark
+    public boolean detectFrame(Blackhole blackhole) {
+        Size srcSize = this.frame.size();
+        double detectionScale = RectangleDetector.getDetectionScale(srcSize, this.detectionResolution);
+        Size size = new Size(Math.round(srcSize.width * detectionScale), Math.round(srcSize.height * detectionScale));
+        Mat grayImage = this.detector.getGrayImage(this.frame, size);
+        try {
+            blackhole.consume(this.detector.measureSharpness(grayImage));
+            MatOfPoint contour = this.detector.detect(grayImage, this.rotation, this.corners);
+            if (contour == null) {
+                return false;
+            }
+            contour.release();
+            return true;
+        } finally {
+            if (grayImage != this.frame) {
+                this.allocator.release(grayImage);
+            }
+        }
+    }
+}
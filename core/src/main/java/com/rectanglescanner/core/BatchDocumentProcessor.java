@@ -0,0 +1,195 @@
+package com.rectanglescanner.core;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+  Detects, crops, filters and saves documents in images that are already on
+  disk, without a camera.
+
+  Images are processed in parallel by a fixed number of threads. A new image
+  is only started once a thread is free, so no matter how many images are in
+  the batch, at most one image per thread is in memory. Every result is handed
+  to the listener as soon as its image is done, from the thread that processed it.
+ */
+public class BatchDocumentProcessor {
+
+    /**
+    Receives the result of every image of a batch
+    */
+    public interface Listener {
+        void onResult(Result result);
+    }
+
+    /**
+    How the images of a batch are processed
+    */
+    public static class Options {
+        // Folder the processed images are saved in
+        public File outputDirectory;
+        // Filter applied to the document, the same ids as the scanner's filterId
+        public int filterId = 1;
+        // Format the processed images are saved in
+        public ImageEncoder encoder = new ImageEncoder();
+        // Longest edge of the image the document is detected on
+        public int detectionResolution = 640;
+        // Number of images processed at the same time
+        public int parallelism = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+    The outcome of one image of a batch
+    */
+    public static class Result {
+        // Position of the image in the batch
+        public final int index;
+        public final String inputPath;
+        // The saved image, or null if the image failed to process
+        public String outputPath;
+        // Corners of the document in the input image in the order of
+        // QuadGeometry, or null if no document was detected
+        public double[] corners;
+        public int width;
+        public int height;
+        // Why the image failed to process, or null
+        public Exception error;
+
+        Result(int index, String inputPath) {
+            this.index = index;
+            this.inputPath = inputPath;
+        }
+    }
+
+    private final Options options;
+    private volatile boolean cancelled = false;
+
+    public BatchDocumentProcessor(Options options) {
+        this.options = options;
+    }
+
+    /**
+    Processes the images and blocks until every started image is done and its
+    result was handed to the listener. Images that are not started before
+    cancel is called are skipped.
+    @return the number of images processed
+    */
+    public int process(List<String> inputPaths, final Listener listener) throws InterruptedException {
+        final int parallelism = Math.max(1, this.options.parallelism);
+        final Semaphore slots = new Semaphore(parallelism);
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "Batch Document Thread " + threadCount.incrementAndGet());
+            }
+        });
+
+        int started = 0;
+        try {
+            for (int i = 0; i < inputPaths.size() && !this.cancelled; i++) {
+                slots.acquire();
+                final Result result = new Result(i, inputPaths.get(i));
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            try {
+                                processImage(result);
+                            } catch (Exception e) {
+                                result.outputPath = null;
+                                result.error = e;
+                            }
+                            listener.onResult(result);
+                        } finally {
+                            slots.release();
+                        }
+                    }
+                });
+                started++;
+            }
+            // Every slot is free once the last image is done
+            slots.acquire(parallelism);
+            slots.release(parallelism);
+        } finally {
+            executor.shutdown();
+        }
+        return started;
+    }
+
+    /**
+    Stops starting new images, the images being processed still finish
+    */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    private void processImage(Result result) {
+        Mat image = Imgcodecs.imread(result.inputPath, Imgcodecs.IMREAD_COLOR);
+        Mat doc = null;
+        try {
+            if (image.empty()) {
+                throw new IllegalArgumentException("Could not decode " + result.inputPath);
+            }
+            result.width = image.cols();
+            result.height = image.rows();
+            result.corners = detectDocument(image);
+
+            if (result.corners != null) {
+                doc = DocumentWarper.fourPointTransform(image, result.corners, 0);
+            } else {
+                doc = image;
+            }
+            ImageFilters.applyFilters(doc, this.options.filterId);
+
+            ImageEncoder encoder = this.options.encoder;
+            String outputPath = new File(this.options.outputDirectory, "B" + UUID.randomUUID() + encoder.getFileExtension()).getPath();
+            if (!encoder.write(outputPath, doc)) {
+                throw new IllegalStateException("Could not write " + outputPath);
+            }
+            result.outputPath = outputPath;
+        } finally {
+            image.release();
+            if (doc != null && doc != image) {
+                doc.release();
+            }
+        }
+    }
+
+    /**
+    Detects the document on a smaller greyscale copy of the image.
+    @return the corners in the image or null if there is no document
+    */
+    private double[] detectDocument(Mat image) {
+        Size srcSize = image.size();
+        double detectionScale = RectangleDetector.getDetectionScale(srcSize, this.options.detectionResolution);
+        Size size = new Size(Math.round(srcSize.width * detectionScale), Math.round(srcSize.height * detectionScale));
+
+        RectangleDetector detector = new RectangleDetector(MatAllocator.UNPOOLED);
+        Mat grayImage = detector.getGrayImage(image, size);
+        double[] corners = new double[8];
+        // Images on disk are already upright, which is the rotation that leaves the corners as they are
+        MatOfPoint contour = detector.detect(grayImage, QuadGeometry.ROTATION_90, corners);
+        if (grayImage != image) {
+            grayImage.release();
+        }
+        detector.release();
+
+        if (contour == null) {
+            return null;
+        }
+        contour.release();
+        QuadGeometry.scale(corners, 4, 1 / detectionScale, corners);
+        return corners;
+    }
+}
@@ -0,0 +1,80 @@
+package com.rectanglescanner.core;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+  Picks the contours worth checking for a rectangle. Each contour's area is
+  computed once, contours smaller than the minimum area are dropped and only
+  the biggest few are kept, so the work doesn't grow with the number of
+  contours a textured background produces.
+ */
+public class ContourSelector {
+
+    private static final int MAX_CANDIDATES = 16;
+
+    /**
+    Returns the biggest contours that are at least minArea, from the biggest to
+    the smallest. Every other contour is released.
+    */
+    public static ArrayList<MatOfPoint> select(List<MatOfPoint> contours, double minArea) {
+        // Min heap, the smallest kept contour is the first one replaced
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(MAX_CANDIDATES + 1);
+        for (MatOfPoint contour : contours) {
+            double area = Imgproc.contourArea(contour);
+            if (area < minArea) {
+                contour.release();
+                continue;
+            }
+
+            if (candidates.size() < MAX_CANDIDATES) {
+                candidates.add(new Candidate(contour, area));
+            } else if (area > candidates.peek().area) {
+                candidates.poll().contour.release();
+                candidates.add(new Candidate(contour, area));
+            } else {
+                contour.release();
+            }
+        }
+
+        ArrayList<MatOfPoint> selected = new ArrayList<>(candidates.size());
+        while (!candidates.isEmpty()) {
+            selected.add(candidates.poll().contour);
+        }
+        Collections.reverse(selected);
+        return selected;
+    }
+
+    /**
+    Returns the OpenCV contour retrieval mode for the given name. Unknown names
+    use list, which finds the same contours as tree without the hierarchy.
+    */
+    public static int getRetrievalMode(String name) {
+        if ("external".equals(name)) {
+            return Imgproc.RETR_EXTERNAL;
+        } else if ("tree".equals(name)) {
+            return Imgproc.RETR_TREE;
+        }
+        return Imgproc.RETR_LIST;
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        final MatOfPoint contour;
+        final double area;
+
+        Candidate(MatOfPoint contour, double area) {
+            this.contour = contour;
+            this.area = area;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(this.area, other.area);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.rectanglescanner.core;
+
+import org.opencv.core.Size;
+
+/**
+  Decides which detection results are worth sending to JS. A result is sent
+  when a rectangle is found or lost, when a corner moved more than the
+  threshold since the last sent rectangle, or when the heartbeat interval
+  passed since the last sent result.
+
+  With a threshold of 0 every result is sent.
+ */
+public class DetectionEventFilter {
+
+    private double threshold = 0;
+    private long heartbeatNanos = 0;
+
+    private boolean hasSent = false;
+    private boolean lastSentDetected = false;
+    private final double[] lastSentCorners = new double[8];
+    private double lastSentWidth = 0;
+    private double lastSentHeight = 0;
+    private long lastSentNanos = 0;
+
+    /**
+    Sets how far (in pixels of the detection result) a corner has to move
+    before a new result is sent. 0 sends every result.
+    */
+    public synchronized void setThreshold(double threshold) {
+        this.threshold = Math.max(0, threshold);
+    }
+
+    /**
+    Sets the max time between sent results while nothing changes. 0 doesn't
+    resend unchanged results.
+    */
+    public synchronized void setHeartbeat(int milliseconds) {
+        this.heartbeatNanos = Math.max(0, milliseconds) * 1000000L;
+    }
+
+    /**
+    Returns true if the result should be sent and remembers it as the last
+    sent result. The result is the corners of the rectangle in an image of the
+    source size or null if no rectangle was found.
+    */
+    public synchronized boolean shouldSend(double[] corners, Size sourceSize, long timestampNanos) {
+        if (this.threshold <= 0 || !this.hasSent || hasChanged(corners, sourceSize)
+                || (this.heartbeatNanos > 0 && timestampNanos - this.lastSentNanos >= this.heartbeatNanos)) {
+            remember(corners, sourceSize, timestampNanos);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+    Forgets the last sent result, the next result is always sent
+    */
+    public synchronized void reset() {
+        this.hasSent = false;
+    }
+
+    private boolean hasChanged(double[] corners, Size sourceSize) {
+        boolean detected = corners != null;
+        if (detected != this.lastSentDetected) {
+            return true;
+        }
+        if (!detected) {
+            return false;
+        }
+        if (sourceSize.width != this.lastSentWidth || sourceSize.height != this.lastSentHeight) {
+            return true;
+        }
+        for (int i = 0; i < 8; i++) {
+            if (Math.abs(corners[i] - this.lastSentCorners[i]) > this.threshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void remember(double[] corners, Size sourceSize, long timestampNanos) {
+        this.hasSent = true;
+        this.lastSentNanos = timestampNanos;
+        this.lastSentDetected = corners != null;
+        if (corners != null) {
+            System.arraycopy(corners, 0, this.lastSentCorners, 0, 8);
+            this.lastSentWidth = sourceSize.width;
+            this.lastSentHeight = sourceSize.height;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.rectanglescanner.core;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+  Fixes the perspective of a document in a captured image. The corners can be
+  in any orientation of the image, the transform itself puts the document
+  upright, so it never needs a separate rotation pass.
+ */
+public class DocumentWarper {
+
+    // Max size of a destination strip warped at once
+    private static final long WARP_STRIP_BYTES = 4 * 1024 * 1024;
+    private static final int MIN_WARP_STRIP_ROWS = 16;
+
+    /**
+    Returns a new Mat with the document inside the corners of the image,
+    upright. The corners are in the order of QuadGeometry. A document longer
+    than maxSize is scaled down by the transform itself, so it is written at
+    its final size without a separate resize. 0 keeps the full size.
+    */
+    public static Mat fourPointTransform(Mat src, double[] corners, int maxSize) {
+        Size docSize = getDocumentSize(corners);
+        double scale = RectangleDetector.getDetectionScale(docSize, maxSize);
+        double dw = docSize.width * scale;
+        int maxWidth = Double.valueOf(dw).intValue();
+        double dh = docSize.height * scale;
+        int maxHeight = Double.valueOf(dh).intValue();
+
+        Mat doc = new Mat(maxHeight, maxWidth, src.type());
+        Mat src_mat = new Mat(4, 1, CvType.CV_32FC2);
+        Mat dst_mat = new Mat(4, 1, CvType.CV_32FC2);
+
+        src_mat.put(0, 0, corners);
+        dst_mat.put(0, 0, 0.0, 0.0, dw, 0.0, dw, dh, 0.0, dh);
+
+        Mat m = Imgproc.getPerspectiveTransform(src_mat, dst_mat);
+
+        warpPerspectiveInStrips(src, doc, m);
+
+        src_mat.release();
+        dst_mat.release();
+        m.release();
+
+        return doc;
+    }
+
+    /**
+    Returns the upright size of the document inside the corners, the longest
+    of its opposite edges
+    */
+    public static Size getDocumentSize(double[] corners) {
+        double widthA = QuadGeometry.distance(corners, QuadGeometry.BOTTOM_LEFT, QuadGeometry.BOTTOM_RIGHT);
+        double widthB = QuadGeometry.distance(corners, QuadGeometry.TOP_LEFT, QuadGeometry.TOP_RIGHT);
+        double heightA = QuadGeometry.distance(corners, QuadGeometry.BOTTOM_RIGHT, QuadGeometry.TOP_RIGHT);
+        double heightB = QuadGeometry.distance(corners, QuadGeometry.BOTTOM_LEFT, QuadGeometry.TOP_LEFT);
+        return new Size(Math.max(widthA, widthB), Math.max(heightA, heightB));
+    }
+
+    /**
+    Warps the source into the preallocated destination a horizontal strip at a
+    time. Each strip uses the transform shifted up by the strip's first row.
+    The destination itself is always the full document, only the coordinate
+    maps OpenCV builds for each warp call are bound by the strip size.
+    */
+    private static void warpPerspectiveInStrips(Mat src, Mat dst, Mat m) {
+        warpPerspectiveInStrips(src, dst, m, WARP_STRIP_BYTES);
+    }
+
+    /**
+    Warps in strips of at most stripBytes of the destination, with at least
+    MIN_WARP_STRIP_ROWS rows each
+    */
+    static void warpPerspectiveInStrips(Mat src, Mat dst, Mat m, long stripBytes) {
+        long rowBytes = Math.max(1, (long) dst.cols() * dst.elemSize());
+        int stripRows = (int) Math.max(MIN_WARP_STRIP_ROWS, stripBytes / rowBytes);
+
+        if (stripRows >= dst.rows()) {
+            Imgproc.warpPerspective(src, dst, m, dst.size());
+            return;
+        }
+
+        Mat shift = Mat.eye(3, 3, m.type());
+        Mat noOffset = new Mat();
+        Mat stripTransform = new Mat();
+        for (int y = 0; y < dst.rows(); y += stripRows) {
+            int stripEnd = Math.min(dst.rows(), y + stripRows);
+            shift.put(1, 2, -y);
+            Core.gemm(shift, m, 1, noOffset, 0, stripTransform);
+
+            Mat strip = dst.submat(y, stripEnd, 0, dst.cols());
+            Imgproc.warpPerspective(src, strip, stripTransform, strip.size());
+            strip.release();
+        }
+        shift.release();
+        noOffset.release();
+        stripTransform.release();
+    }
+}
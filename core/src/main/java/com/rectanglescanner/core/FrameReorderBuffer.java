@@ -0,0 +1,69 @@
+package com.rectanglescanner.core;
+
+import java.util.TreeMap;
+
+/**
+  Puts the results of frames processed on several threads back in frame order.
+  Frame numbers start at 0 and every number has to get exactly one result, so
+  a frame that fails still has to be added, with a result that marks it lost.
+
+  A result is held until the results of every earlier frame were added. If more
+  than the max number of results are held, the missing frames are given up on
+  and the held results are released from the oldest one. A result added after
+  its frame was given up on is refused.
+
+  Not thread safe, the caller has to lock around it.
+ */
+public class FrameReorderBuffer<T> {
+
+    private final TreeMap<Long, T> heldResults = new TreeMap<>();
+    private final int maxHeldResults;
+    private long nextFrameNumber = 0;
+
+    public FrameReorderBuffer(int maxHeldResults) {
+        this.maxHeldResults = Math.max(1, maxHeldResults);
+    }
+
+    /**
+    Adds the result of a frame.
+    @return false if the frame was already released or given up on, the
+    caller keeps the result
+    */
+    public boolean add(long frameNumber, T result) {
+        if (frameNumber < this.nextFrameNumber || this.heldResults.containsKey(frameNumber)) {
+            return false;
+        }
+        this.heldResults.put(frameNumber, result);
+        return true;
+    }
+
+    /**
+    Returns the next result in frame order or null if it has to wait for an
+    earlier frame. Call it until it returns null after every add.
+    */
+    public T poll() {
+        if (this.heldResults.isEmpty()) {
+            return null;
+        }
+        long frameNumber = this.heldResults.firstKey();
+        if (frameNumber != this.nextFrameNumber && this.heldResults.size() <= this.maxHeldResults) {
+            return null;
+        }
+        this.nextFrameNumber = frameNumber + 1;
+        return this.heldResults.remove(frameNumber);
+    }
+
+    /**
+    Returns the number of the frame whose result is released next
+    */
+    public long getNextFrameNumber() {
+        return this.nextFrameNumber;
+    }
+
+    /**
+    Returns the number of results waiting for an earlier frame
+    */
+    public int getHeldResultCount() {
+        return this.heldResults.size();
+    }
+}
@@ -0,0 +1,140 @@
+package com.rectanglescanner.core;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+  Encodes images to files in the configured format. OpenCV picks the encoder
+  from the file extension, so file names have to come from getFileExtension.
+
+  Jpeg and lossy WebP use the quality, WebP can also be lossless and PNG uses
+  the compression level, where 1 is the fastest and 9 the smallest. Images can
+  be saved as single channel greyscale, which the greyscale and black and white
+  filters already produce. WebP has no single channel images, so greyscale
+  WebP images are saved with three equal channels.
+
+  The settings can be changed from any thread. Images of one capture should
+  be written with a copy, so a change can't land between them.
+ */
+public class ImageEncoder {
+
+    public static final String JPEG = "jpeg";
+    public static final String WEBP = "webp";
+    public static final String PNG = "png";
+
+    private String format = JPEG;
+    private double quality = 0.5;
+    private boolean lossless = false;
+    private int compressionLevel = 1;
+    private boolean grayscale = false;
+
+    /**
+    Sets the format by name, unknown names use jpeg
+    */
+    public synchronized void setFormat(String format) {
+        if (WEBP.equals(format) || PNG.equals(format)) {
+            this.format = format;
+        } else {
+            this.format = JPEG;
+        }
+    }
+
+    public synchronized String getFormat() {
+        return this.format;
+    }
+
+    /**
+    Sets the quality of jpeg and lossy WebP images from 0 to 1
+    */
+    public synchronized void setQuality(double quality) {
+        this.quality = Math.max(0, Math.min(1, quality));
+    }
+
+    /**
+    Sets if WebP images are lossless
+    */
+    public synchronized void setLossless(boolean lossless) {
+        this.lossless = lossless;
+    }
+
+    /**
+    Sets the PNG compression level from 0 to 9
+    */
+    public synchronized void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = Math.max(0, Math.min(9, compressionLevel));
+    }
+
+    /**
+    Sets if color images are converted to single channel greyscale
+    */
+    public synchronized void setGrayscale(boolean grayscale) {
+        this.grayscale = grayscale;
+    }
+
+    public synchronized boolean isGrayscale() {
+        return this.grayscale;
+    }
+
+    /**
+    Returns a copy with the same settings, so a capture keeps the settings it
+    was taken with while they change
+    */
+    public synchronized ImageEncoder copy() {
+        ImageEncoder encoder = new ImageEncoder();
+        encoder.format = this.format;
+        encoder.quality = this.quality;
+        encoder.lossless = this.lossless;
+        encoder.compressionLevel = this.compressionLevel;
+        encoder.grayscale = this.grayscale;
+        return encoder;
+    }
+
+    /**
+    Returns the file extension of the format, including the dot
+    */
+    public synchronized String getFileExtension() {
+        if (WEBP.equals(this.format)) {
+            return ".webp";
+        } else if (PNG.equals(this.format)) {
+            return ".png";
+        }
+        return ".jpg";
+    }
+
+    /**
+    Encodes the image to the file, which has to end in getFileExtension.
+    @return false if the image could not be written
+    */
+    public boolean write(String filePath, Mat image) {
+        Mat output = image;
+        if (isGrayscale() && image.channels() > 1) {
+            // Decoded images are in OpenCV's BGR channel order
+            output = new Mat();
+            Imgproc.cvtColor(image, output, image.channels() == 4 ? Imgproc.COLOR_BGRA2GRAY : Imgproc.COLOR_BGR2GRAY);
+        }
+
+        MatOfInt parameters = getParameters();
+        boolean success = Imgcodecs.imwrite(filePath, output, parameters);
+        parameters.release();
+        if (output != image) {
+            output.release();
+        }
+        return success;
+    }
+
+    /**
+    Returns the imwrite parameters of the format. The caller releases them.
+    */
+    synchronized MatOfInt getParameters() {
+        if (WEBP.equals(this.format)) {
+            // OpenCV uses lossless WebP for qualities above 100
+            int webpQuality = this.lossless ? 101 : Math.max(1, (int) (this.quality * 100));
+            return new MatOfInt(Imgcodecs.IMWRITE_WEBP_QUALITY, webpQuality);
+        } else if (PNG.equals(this.format)) {
+            return new MatOfInt(Imgcodecs.IMWRITE_PNG_COMPRESSION, this.compressionLevel);
+        }
+        return new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, (int) (this.quality * 100));
+    }
+}
@@ -0,0 +1,65 @@
+package com.rectanglescanner.core;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+  The filters that can be applied to a captured image, by the filter id set
+  on the scanner.
+ */
+public class ImageFilters {
+
+    /*!
+     Applies filters to the image based on the set filter
+     */
+    public static void applyFilters(Mat image, int filterId) {
+      switch (filterId) {
+        case 1: {
+          // original image
+          break;
+        }
+        case 2: {
+          applyGreyscaleFilterToImage(image);
+          break;
+        }
+        case 3: {
+          applyColorFilterToImage(image);
+          break;
+        }
+        case 4: {
+          applyBlackAndWhiteFilterToImage(image);
+          break;
+        }
+        default:
+          // original image
+      }
+    }
+
+    /*!
+     Slightly enhances the black and white image
+     */
+    public static Mat applyGreyscaleFilterToImage(Mat image)
+    {
+      Imgproc.cvtColor(image, image, Imgproc.COLOR_RGBA2GRAY);
+      return image;
+    }
+
+    /*!
+     Slightly enhances the black and white image
+     */
+    public static Mat applyBlackAndWhiteFilterToImage(Mat image)
+    {
+      Imgproc.cvtColor(image, image, Imgproc.COLOR_RGBA2GRAY);
+      image.convertTo(image, -1, 1, 10);
+      return image;
+    }
+
+    /*!
+     Slightly enhances the color on the image
+     */
+    public static Mat applyColorFilterToImage(Mat image)
+    {
+      image.convertTo(image, -1, 1.2, 0);
+      return image;
+    }
+}
@@ -0,0 +1,37 @@
+package com.rectanglescanner.core;
+
+import org.opencv.core.Mat;
+
+/**
+  Hands out the temporary Mats used by the detection core, so the caller
+  decides whether they are pooled between frames or allocated every time.
+ */
+public interface MatAllocator {
+
+    /**
+    Returns a Mat with the given size and type. The contents are undefined.
+    */
+    Mat acquire(int rows, int cols, int type);
+
+    /**
+    Gives back a Mat returned by acquire
+    */
+    void release(Mat mat);
+
+    /**
+    Allocates a new Mat for every acquire and releases it right away
+    */
+    MatAllocator UNPOOLED = new MatAllocator() {
+        @Override
+        public Mat acquire(int rows, int cols, int type) {
+            return new Mat(rows, cols, type);
+        }
+
+        @Override
+        public void release(Mat mat) {
+            if (mat != null) {
+                mat.release();
+            }
+        }
+    };
+}
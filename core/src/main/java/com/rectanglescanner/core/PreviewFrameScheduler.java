@@ -0,0 +1,161 @@
+package com.rectanglescanner.core;
+
+import java.util.ArrayDeque;
+
+/**
+  A single slot mailbox between the camera and the image processor workers.
+  The newest preview frame always replaces a frame that is still waiting, so a
+  worker picks up the latest frame as soon as it is free. Frames are raw camera
+  buffers, so a dropped frame is never converted.
+
+  Every frame handed to a worker gets an increasing frame number so results can
+  be put back in order when several workers process frames at the same time.
+
+  A target frame rate can be set to limit how often frames are accepted.
+ */
+public class PreviewFrameScheduler<W> {
+
+    /**
+    Receives a frame taken from the mailbox. Each worker reuses its own ticket.
+    */
+    public static class FrameTicket {
+        public byte[] data;
+        public long frameNumber;
+    }
+
+    private byte[] pendingFrame = null;
+    private long nextFrameNumber = 0;
+    private long minFrameIntervalNanos = 0;
+    private long lastAcceptedFrameNanos = 0;
+    private int maxActiveWorkers = 1;
+    private int activeWorkers = 0;
+    private int workerCount = 0;
+    private final ArrayDeque<W> idleWorkers = new ArrayDeque<>();
+
+    /**
+    Sets the max number of frames per second to accept. 0 accepts every frame.
+    */
+    public synchronized void setTargetFrameRate(int framesPerSecond) {
+        this.minFrameIntervalNanos = framesPerSecond > 0 ? 1000000000L / framesPerSecond : 0;
+    }
+
+    /**
+    Sets how many workers can process frames at the same time
+    */
+    public synchronized void setMaxActiveWorkers(int maxActiveWorkers) {
+        this.maxActiveWorkers = Math.max(1, maxActiveWorkers);
+    }
+
+    /**
+    Adds an idle worker that frames can be handed to
+    */
+    public synchronized void addWorker(W worker) {
+        this.idleWorkers.add(worker);
+        this.workerCount++;
+    }
+
+    /**
+    Removes an idle worker from the scheduler.
+    @return the removed worker or null if every worker is busy
+    */
+    public synchronized W removeIdleWorker() {
+        W worker = this.idleWorkers.poll();
+        if (worker != null) {
+            this.workerCount--;
+        }
+        return worker;
+    }
+
+    /**
+    Removes every worker and the waiting frame. Workers that are still busy
+    must not call finishFrame or retireWorker afterwards.
+    @return the frame that was waiting or null
+    */
+    public synchronized byte[] clearWorkers() {
+        byte[] droppedFrame = this.pendingFrame;
+        this.pendingFrame = null;
+        this.idleWorkers.clear();
+        this.workerCount = 0;
+        this.activeWorkers = 0;
+        return droppedFrame;
+    }
+
+    /**
+    Returns the number of workers added to the scheduler
+    */
+    public synchronized int getWorkerCount() {
+        return this.workerCount;
+    }
+
+    /**
+    Offers a new frame to the mailbox.
+    @return the frame that was dropped (the frame that was waiting, or the
+    offered frame if it came too soon) or null if nothing was dropped
+    */
+    public synchronized byte[] offer(byte[] frame, long timestampNanos) {
+        if (this.minFrameIntervalNanos > 0 && this.lastAcceptedFrameNanos != 0
+                && timestampNanos - this.lastAcceptedFrameNanos < this.minFrameIntervalNanos) {
+            return frame;
+        }
+        this.lastAcceptedFrameNanos = timestampNanos;
+
+        byte[] droppedFrame = this.pendingFrame;
+        this.pendingFrame = frame;
+        return droppedFrame;
+    }
+
+    /**
+    Claims an idle worker if a frame is waiting and fewer than the max number
+    of workers are active.
+    @return the worker the caller should schedule or null
+    */
+    public synchronized W claimIdleWorker() {
+        if (this.pendingFrame == null || this.activeWorkers >= this.maxActiveWorkers || this.idleWorkers.isEmpty()) {
+            return null;
+        }
+        this.activeWorkers++;
+        return this.idleWorkers.poll();
+    }
+
+    /**
+    Takes the waiting frame out of the mailbox into the ticket.
+    @return false if there was no frame waiting
+    */
+    public synchronized boolean takeFrame(FrameTicket ticket) {
+        if (this.pendingFrame == null) {
+            return false;
+        }
+        ticket.data = this.pendingFrame;
+        ticket.frameNumber = this.nextFrameNumber++;
+        this.pendingFrame = null;
+        return true;
+    }
+
+    /**
+    Called by a worker once it finished a frame.
+    @return true if another frame is waiting and the worker should run again
+    */
+    public synchronized boolean finishFrame(W worker) {
+        if (this.pendingFrame != null && this.activeWorkers <= this.maxActiveWorkers) {
+            return true;
+        }
+        this.activeWorkers--;
+        this.idleWorkers.add(worker);
+        return false;
+    }
+
+    /**
+    Called instead of finishFrame by a worker that finished a frame and is
+    removed from the scheduler, when there are more workers than the max
+    number of active workers.
+    @return true if the worker was removed
+    */
+    public synchronized boolean retireWorker(W worker) {
+        if (this.workerCount <= this.maxActiveWorkers) {
+            return false;
+        }
+        this.activeWorkers--;
+        this.workerCount--;
+        return true;
+    }
+}
@@ -0,0 +1,195 @@
+package com.rectanglescanner.core;
+
+import org.opencv.core.Point;
+
+/**
+  Geometry of rectangles on flat arrays of coordinates, so checking the
+  candidates of a frame doesn't allocate.
+
+  Points are stored as x, y pairs. The corners of a rectangle are 4 points in
+  the order top left, top right, bottom right, bottom left.
+
+  Rotations use the values of android.view.Surface so the screen rotation can
+  be passed straight through, without depending on Android.
+ */
+public class QuadGeometry {
+
+    public static final int TOP_LEFT = 0;
+    public static final int TOP_RIGHT = 1;
+    public static final int BOTTOM_RIGHT = 2;
+    public static final int BOTTOM_LEFT = 3;
+
+    public static final int ROTATION_0 = 0;
+    public static final int ROTATION_90 = 1;
+    public static final int ROTATION_180 = 2;
+    public static final int ROTATION_270 = 3;
+
+    public static double x(double[] points, int index) {
+        return points[index * 2];
+    }
+
+    public static double y(double[] points, int index) {
+        return points[index * 2 + 1];
+    }
+
+    /**
+    Picks the corners of a polygon into out. The top left corner has the
+    smallest x + y, the bottom right the biggest, the top right has the
+    smallest y - x and the bottom left the biggest.
+    */
+    public static void sortCorners(double[] points, int count, double[] out) {
+        int minSum = 0;
+        int maxSum = 0;
+        int minDiff = 0;
+        int maxDiff = 0;
+        for (int i = 1; i < count; i++) {
+            double sum = x(points, i) + y(points, i);
+            double diff = y(points, i) - x(points, i);
+            if (sum < x(points, minSum) + y(points, minSum)) {
+                minSum = i;
+            }
+            if (sum > x(points, maxSum) + y(points, maxSum)) {
+                maxSum = i;
+            }
+            if (diff < y(points, minDiff) - x(points, minDiff)) {
+                minDiff = i;
+            }
+            if (diff > y(points, maxDiff) - x(points, maxDiff)) {
+                maxDiff = i;
+            }
+        }
+
+        setPoint(out, TOP_LEFT, x(points, minSum), y(points, minSum));
+        setPoint(out, TOP_RIGHT, x(points, minDiff), y(points, minDiff));
+        setPoint(out, BOTTOM_RIGHT, x(points, maxSum), y(points, maxSum));
+        setPoint(out, BOTTOM_LEFT, x(points, maxDiff), y(points, maxDiff));
+    }
+
+    /**
+    Returns true if the corners make a rectangle that is close to upright and
+    at least a tenth of the image width on each side
+    */
+    public static boolean isValidRectangle(double[] corners, double imageWidth) {
+        int minimumSize = (int) imageWidth / 10;
+
+        double tlX = x(corners, TOP_LEFT);
+        double tlY = y(corners, TOP_LEFT);
+        double trX = x(corners, TOP_RIGHT);
+        double trY = y(corners, TOP_RIGHT);
+        double brX = x(corners, BOTTOM_RIGHT);
+        double brY = y(corners, BOTTOM_RIGHT);
+        double blX = x(corners, BOTTOM_LEFT);
+        double blY = y(corners, BOTTOM_LEFT);
+
+        boolean isANormalShape = tlX != trX && trY != tlY && brY != blY && blX != brX;
+        boolean isBigEnough = ((trX - tlX >= minimumSize) && (brX - blX >= minimumSize)
+                && (blY - tlY >= minimumSize) && (brY - trY >= minimumSize));
+
+        boolean isAnActualRectangle = Math.abs(tlX - blX) <= minimumSize
+                && Math.abs(trX - brX) <= minimumSize
+                && Math.abs(tlY - trY) <= minimumSize
+                && Math.abs(brY - blY) <= minimumSize;
+
+        return isANormalShape && isAnActualRectangle && isBigEnough;
+    }
+
+    /**
+    Scales every point by the factor into out, which can be the same array
+    */
+    public static void scale(double[] points, int count, double factor, double[] out) {
+        for (int i = 0; i < count * 2; i++) {
+            out[i] = points[i] * factor;
+        }
+    }
+
+    /**
+    Returns the distance between two points
+    */
+    public static double distance(double[] points, int from, int to) {
+        double dx = x(points, to) - x(points, from);
+        double dy = y(points, to) - y(points, from);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+    Moves points of an image of the given size, in place, to where they are
+    once the image is rotated to match the screen. This is the same rotation
+    Core.rotate would apply to the whole image.
+    */
+    public static void rotateForScreen(double[] points, int count, double width, double height, int rotation) {
+        double maxX = width - 1;
+        double maxY = height - 1;
+        for (int i = 0; i < count; i++) {
+            double px = x(points, i);
+            double py = y(points, i);
+            switch (rotation) {
+                case ROTATION_90: {
+                    break;
+                }
+                case ROTATION_180: {
+                    // 90 degrees counter clockwise
+                    setPoint(points, i, py, maxX - px);
+                    break;
+                }
+                case ROTATION_270: {
+                    // 180 degrees
+                    setPoint(points, i, maxX - px, maxY - py);
+                    break;
+                }
+                case ROTATION_0:
+                default: {
+                    // 90 degrees clockwise
+                    setPoint(points, i, maxY - py, px);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+    Moves points on the screen, in place, back to where they are in an image of
+    the given size. This undoes rotateForScreen.
+    */
+    public static void rotateFromScreen(double[] points, int count, double width, double height, int rotation) {
+        double maxX = width - 1;
+        double maxY = height - 1;
+        for (int i = 0; i < count; i++) {
+            double px = x(points, i);
+            double py = y(points, i);
+            switch (rotation) {
+                case ROTATION_90: {
+                    break;
+                }
+                case ROTATION_180: {
+                    setPoint(points, i, maxX - py, px);
+                    break;
+                }
+                case ROTATION_270: {
+                    setPoint(points, i, maxX - px, maxY - py);
+                    break;
+                }
+                case ROTATION_0:
+                default: {
+                    setPoint(points, i, py, maxY - px);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+    Returns the points as OpenCV points
+    */
+    public static Point[] toPoints(double[] points, int count) {
+        Point[] result = new Point[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new Point(x(points, i), y(points, i));
+        }
+        return result;
+    }
+
+    private static void setPoint(double[] points, int index, double x, double y) {
+        points[index * 2] = x;
+        points[index * 2 + 1] = y;
+    }
+}
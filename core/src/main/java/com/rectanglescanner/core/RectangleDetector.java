@@ -0,0 +1,246 @@
+package com.rectanglescanner.core;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+  Finds the biggest rectangle in a greyscale image. This is the detection
+  used on the preview frames, without anything that depends on Android, so it
+  also runs on desktop OpenCV.
+
+  The image stays in the orientation it was taken in, only the corners of the
+  rectangle are rotated to match the screen. The buffers used to check the
+  contours are reused, so a detector must only be used by one thread at a time.
+ */
+public class RectangleDetector {
+
+    private final MatAllocator allocator;
+    private int retrievalMode = Imgproc.RETR_LIST;
+    private final MatOfPoint2f contourPoints = new MatOfPoint2f();
+    private final MatOfPoint2f approxPoints = new MatOfPoint2f();
+    private double[] polygon = new double[16];
+    private float[] polygonBuffer = new float[16];
+
+    public RectangleDetector(MatAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    /**
+    Sets the OpenCV contour retrieval mode used by findContours
+    */
+    public void setRetrievalMode(int retrievalMode) {
+        this.retrievalMode = retrievalMode;
+    }
+
+    /**
+    Finds the biggest rectangle in the whole image.
+    @return the contour of the rectangle, with its corners written to corners,
+    or null if there is no rectangle
+    */
+    public MatOfPoint detect(Mat grayImage, int rotation, double[] corners) {
+        Size size = grayImage.size();
+        ArrayList<MatOfPoint> contours = findContours(grayImage, new Point(0, 0));
+        ArrayList<MatOfPoint> selectedContours = ContourSelector.select(contours, getMinimumContourArea(size, rotation));
+        return findQuadrilateral(selectedContours, size, rotation, corners);
+    }
+
+    /**
+    Returns the greyscale image at the given size. This is the image itself
+    when it is already greyscale at that size, otherwise it is acquired from
+    the allocator.
+    */
+    public Mat getGrayImage(Mat image, Size size) {
+        int width = (int) size.width;
+        int height = (int) size.height;
+        if (image.channels() == 1 && image.cols() == width && image.rows() == height) {
+            return image;
+        }
+
+        Mat grayImage = this.allocator.acquire(height, width, CvType.CV_8UC1);
+        if (image.channels() == 1) {
+            Imgproc.resize(image, grayImage, size, 0, 0, Imgproc.INTER_AREA);
+        } else if (image.cols() == width && image.rows() == height) {
+            Imgproc.cvtColor(image, grayImage, Imgproc.COLOR_RGBA2GRAY);
+        } else {
+            Mat resizedImage = this.allocator.acquire(height, width, image.type());
+            Imgproc.resize(image, resizedImage, size, 0, 0, Imgproc.INTER_AREA);
+            Imgproc.cvtColor(resizedImage, grayImage, Imgproc.COLOR_RGBA2GRAY);
+            this.allocator.release(resizedImage);
+        }
+        return grayImage;
+    }
+
+    /**
+    Returns the variance of the Laplacian of the greyscale image. Sharp images
+    have strong edges and a high variance, blurry images a low one. The value
+    depends on the detection resolution.
+    */
+    public double measureSharpness(Mat grayImage) {
+        Mat laplacian = this.allocator.acquire(grayImage.rows(), grayImage.cols(), CvType.CV_16SC1);
+        Imgproc.Laplacian(grayImage, laplacian, CvType.CV_16S);
+
+        MatOfDouble mean = new MatOfDouble();
+        MatOfDouble standardDeviation = new MatOfDouble();
+        Core.meanStdDev(laplacian, mean, standardDeviation);
+        double deviation = standardDeviation.get(0, 0)[0];
+
+        mean.release();
+        standardDeviation.release();
+        this.allocator.release(laplacian);
+        return deviation * deviation;
+    }
+
+    /**
+    Finds the contours of the edges in the greyscale image. The offset is added
+    to every contour point, which places contours found in a region back into
+    the whole image.
+    */
+    public ArrayList<MatOfPoint> findContours(Mat grayImage, Point offset) {
+        int height = grayImage.rows();
+        int width = grayImage.cols();
+        Mat blurredImage = this.allocator.acquire(height, width, CvType.CV_8UC1);
+        Mat cannedImage = this.allocator.acquire(height, width, CvType.CV_8UC1);
+
+        Imgproc.GaussianBlur(grayImage, blurredImage, new Size(5, 5), 0);
+        Imgproc.Canny(blurredImage, cannedImage, 80, 100, 3, false);
+
+        ArrayList<MatOfPoint> contours = new ArrayList<>();
+        Mat hierarchy = new Mat();
+        Imgproc.findContours(cannedImage, contours, hierarchy, this.retrievalMode, Imgproc.CHAIN_APPROX_SIMPLE, offset);
+        hierarchy.release();
+
+        this.allocator.release(blurredImage);
+        this.allocator.release(cannedImage);
+        return contours;
+    }
+
+    /**
+    Finds the first contour that makes a good rectangle, the contours are
+    expected from the biggest to the smallest. The corners are rotated for the
+    screen and written to corners, the contour itself stays in the orientation
+    of the image. Every contour except the returned one is released.
+    @return the contour of the rectangle or null if there is none
+    */
+    public MatOfPoint findQuadrilateral(List<MatOfPoint> contours, Size size, int rotation, double[] corners) {
+        MatOfPoint quadrilateral = null;
+        for (MatOfPoint c : contours) {
+            if (quadrilateral != null) {
+                c.release();
+                continue;
+            }
+
+            c.convertTo(this.contourPoints, CvType.CV_32F);
+            double peri = Imgproc.arcLength(this.contourPoints, true);
+            Imgproc.approxPolyDP(this.contourPoints, this.approxPoints, 0.02 * peri, true);
+
+            int count = readPolygon(this.approxPoints);
+
+            // select biggest 4 angles polygon
+            // if (count == 4) {
+            if (getScreenCorners(this.polygon, count, size, rotation, corners)) {
+                quadrilateral = c;
+                continue;
+            }
+            // }
+            c.release();
+        }
+        return quadrilateral;
+    }
+
+    /**
+    Rotates the points of a polygon found in the image for the screen (in
+    place) and picks its corners into corners.
+    @return false if the corners don't make a good rectangle
+    */
+    public boolean getScreenCorners(double[] points, int count, Size size, int rotation, double[] corners) {
+        QuadGeometry.rotateForScreen(points, count, size.width, size.height, rotation);
+        QuadGeometry.sortCorners(points, count, corners);
+        return QuadGeometry.isValidRectangle(corners, getScreenWidth(size, rotation));
+    }
+
+    /**
+    Releases the native buffers of the detector
+    */
+    public void release() {
+        this.contourPoints.release();
+        this.approxPoints.release();
+    }
+
+    /**
+    Returns the scale of the image used for detection compared to the source
+    image, so its longest edge is at most maxSize. 0 keeps the full size.
+    */
+    public static double getDetectionScale(Size srcSize, int maxSize) {
+        double longestEdge = Math.max(srcSize.width, srcSize.height);
+        if (maxSize <= 0 || longestEdge <= maxSize) {
+            return 1;
+        }
+        return maxSize / longestEdge;
+    }
+
+    /**
+    Returns the smallest contour area that can pass the size check of
+    QuadGeometry.isValidRectangle, with some slack for the perspective of the rectangle
+    */
+    public static double getMinimumContourArea(Size size, int rotation) {
+        double minimumSize = (int) getScreenWidth(size, rotation) / 10;
+        return minimumSize * minimumSize / 2;
+    }
+
+    /**
+    Returns the size of an image once it is rotated to match the screen
+    */
+    public static Size getSizeForScreen(Size size, int rotation) {
+        return new Size(getScreenWidth(size, rotation), getScreenHeight(size, rotation));
+    }
+
+    /**
+    Returns the width of an image of the given size once it is rotated for the
+    screen, without allocating a Size
+    */
+    public static double getScreenWidth(Size size, int rotation) {
+        if (rotation == QuadGeometry.ROTATION_90 || rotation == QuadGeometry.ROTATION_270) {
+            return size.width;
+        }
+        return size.height;
+    }
+
+    /**
+    Returns the height of an image of the given size once it is rotated for the
+    screen
+    */
+    public static double getScreenHeight(Size size, int rotation) {
+        if (rotation == QuadGeometry.ROTATION_90 || rotation == QuadGeometry.ROTATION_270) {
+            return size.height;
+        }
+        return size.width;
+    }
+
+    /**
+    Reads the points of a polygon into the reused polygon buffer, growing it
+    when the polygon has more points than any before.
+    @return the number of points
+    */
+    private int readPolygon(MatOfPoint2f polygonPoints) {
+        int count = polygonPoints.rows();
+        if (this.polygon.length < count * 2) {
+            this.polygon = new double[count * 2];
+            this.polygonBuffer = new float[count * 2];
+        }
+        polygonPoints.get(0, 0, this.polygonBuffer);
+        for (int i = 0; i < count * 2; i++) {
+            this.polygon[i] = this.polygonBuffer[i];
+        }
+        return count;
+    }
+}
@@ -0,0 +1,111 @@
+package com.rectanglescanner.core;
+
+import org.opencv.core.Size;
+
+/**
+  Decides when a detected rectangle is steady enough to capture. The corners
+  of the last few detections are kept in a sliding window and the rectangle is
+  stable once every corner coordinate's standard deviation over a full window
+  is within the tolerance.
+
+  After it reports a stable rectangle, it won't report again until the
+  rectangle is lost, so a document is only captured once.
+ */
+public class StabilityDetector {
+
+    private int windowSize = 8;
+    private double tolerance = 10;
+
+    private double[][] window = new double[8][8];
+    private int count = 0;
+    private int next = 0;
+    private double width = 0;
+    private double height = 0;
+    private boolean armed = true;
+
+    /**
+    Sets how many detections in a row have to be steady
+    */
+    public synchronized void setWindowSize(int frames) {
+        this.windowSize = Math.max(1, frames);
+        this.window = new double[this.windowSize][8];
+        clearWindow();
+    }
+
+    /**
+    Sets the max standard deviation in pixels of a corner coordinate over the window
+    */
+    public synchronized void setTolerance(double pixels) {
+        this.tolerance = Math.max(0, pixels);
+    }
+
+    /**
+    Adds the result of a frame, the corners of the rectangle in an image of the
+    source size or null if no rectangle was found.
+    @return true if the rectangle just became stable and should be captured
+    */
+    public synchronized boolean update(double[] corners, Size sourceSize) {
+        if (corners == null) {
+            clearWindow();
+            this.armed = true;
+            return false;
+        }
+
+        if (sourceSize.width != this.width || sourceSize.height != this.height) {
+            clearWindow();
+            this.width = sourceSize.width;
+            this.height = sourceSize.height;
+        }
+
+        System.arraycopy(corners, 0, this.window[this.next], 0, 8);
+        this.next = (this.next + 1) % this.windowSize;
+        this.count = Math.min(this.count + 1, this.windowSize);
+
+        if (!this.armed || this.count < this.windowSize || !isStable()) {
+            return false;
+        }
+        this.armed = false;
+        clearWindow();
+        return true;
+    }
+
+    /**
+    Clears the window without allowing another report, the rectangle has to
+    hold steady for a full window again
+    */
+    public synchronized void interrupt() {
+        clearWindow();
+    }
+
+    /**
+    Clears the window and allows the next stable rectangle to be reported
+    */
+    public synchronized void reset() {
+        clearWindow();
+        this.armed = true;
+    }
+
+    private boolean isStable() {
+        double maxVariance = this.tolerance * this.tolerance;
+        for (int i = 0; i < 8; i++) {
+            double sum = 0;
+            double sumOfSquares = 0;
+            for (int j = 0; j < this.count; j++) {
+                double value = this.window[j][i];
+                sum += value;
+                sumOfSquares += value * value;
+            }
+            double mean = sum / this.count;
+            double variance = sumOfSquares / this.count - mean * mean;
+            if (variance > maxVariance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void clearWindow() {
+        this.count = 0;
+        this.next = 0;
+    }
+}
@@ -0,0 +1,89 @@
+package com.rectanglescanner.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContourSelectorTest {
+
+    private static final double DELTA = 1e-9;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void selectSortsFromTheBiggestToTheSmallest() {
+        List<MatOfPoint> contours = squares(30, 10, 50, 20, 40);
+
+        ArrayList<MatOfPoint> selected = ContourSelector.select(contours, 0);
+
+        assertSides(selected, 50, 40, 30, 20, 10);
+        release(selected);
+    }
+
+    @Test
+    public void selectDropsContoursSmallerThanTheMinimumArea() {
+        List<MatOfPoint> contours = squares(30, 10, 50, 20, 40);
+
+        ArrayList<MatOfPoint> selected = ContourSelector.select(contours, 25 * 25);
+
+        assertSides(selected, 50, 40, 30);
+        release(selected);
+    }
+
+    @Test
+    public void selectKeepsOnlyTheBiggestSixteen() {
+        int[] sides = new int[20];
+        for (int i = 0; i < sides.length; i++) {
+            // Mixed order, every side is different
+            sides[i] = 10 + (i * 7) % 20;
+        }
+        List<MatOfPoint> contours = squares(sides);
+
+        ArrayList<MatOfPoint> selected = ContourSelector.select(contours, 0);
+
+        assertEquals(16, selected.size());
+        for (int i = 0; i < selected.size(); i++) {
+            assertEquals(29 - i, Math.sqrt(Imgproc.contourArea(selected.get(i))), DELTA);
+        }
+        release(selected);
+    }
+
+    @Test
+    public void getRetrievalModeMapsNamesAndDefaultsToList() {
+        assertEquals(Imgproc.RETR_EXTERNAL, ContourSelector.getRetrievalMode("external"));
+        assertEquals(Imgproc.RETR_TREE, ContourSelector.getRetrievalMode("tree"));
+        assertEquals(Imgproc.RETR_LIST, ContourSelector.getRetrievalMode("list"));
+        assertEquals(Imgproc.RETR_LIST, ContourSelector.getRetrievalMode(null));
+    }
+
+    private static List<MatOfPoint> squares(int... sides) {
+        List<MatOfPoint> contours = new ArrayList<>();
+        for (int side : sides) {
+            contours.add(new MatOfPoint(new Point(0, 0), new Point(side, 0), new Point(side, side), new Point(0, side)));
+        }
+        return contours;
+    }
+
+    private static void assertSides(List<MatOfPoint> contours, int... sides) {
+        assertEquals(sides.length, contours.size());
+        for (int i = 0; i < sides.length; i++) {
+            assertEquals(sides[i] * sides[i], Imgproc.contourArea(contours.get(i)), DELTA);
+        }
+    }
+
+    private static void release(List<MatOfPoint> contours) {
+        for (MatOfPoint contour : contours) {
+            contour.release();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.rectanglescanner.core;
+
+import org.junit.Test;
+import org.opencv.core.Size;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DetectionEventFilterTest {
+
+    private static final long MILLISECOND = 1000000L;
+    private static final Size SOURCE_SIZE = new Size(480, 640);
+
+    @Test
+    public void everyResultIsSentWithoutAThreshold() {
+        DetectionEventFilter filter = new DetectionEventFilter();
+
+        assertTrue(filter.shouldSend(corners(0), SOURCE_SIZE, 0));
+        assertTrue(filter.shouldSend(corners(0), SOURCE_SIZE, 1));
+        assertTrue(filter.shouldSend(null, null, 2));
+        assertTrue(filter.shouldSend(null, null, 3));
+    }
+
+    @Test
+    public void onlyMovesPastTheThresholdAreSent() {
+        DetectionEventFilter filter = new DetectionEventFilter();
+        filter.setThreshold(5);
+
+        assertTrue(filter.shouldSend(corners(0), SOURCE_SIZE, 0));
+        assertFalse(filter.shouldSend(corners(3), SOURCE_SIZE, 1));
+        // Measured from the last sent rectangle, not the last result
+        assertTrue(filter.shouldSend(corners(6), SOURCE_SIZE, 2));
+        assertTrue(filter.shouldSend(corners(6), new Size(640, 480), 3));
+    }
+
+    @Test
+    public void foundAndLostRectanglesAreAlwaysSent() {
+        DetectionEventFilter filter = new DetectionEventFilter();
+        filter.setThreshold(5);
+
+        assertTrue(filter.shouldSend(null, null, 0));
+        assertFalse(filter.shouldSend(null, null, 1));
+        assertTrue(filter.shouldSend(corners(0), SOURCE_SIZE, 2));
+        assertTrue(filter.shouldSend(null, null, 3));
+    }
+
+    @Test
+    public void theHeartbeatResendsAnUnchangedResult() {
+        DetectionEventFilter filter = new DetectionEventFilter();
+        filter.setThreshold(5);
+        filter.setHeartbeat(500);
+
+        assertTrue(filter.shouldSend(corners(0), SOURCE_SIZE, 0));
+        assertFalse(filter.shouldSend(corners(0), SOURCE_SIZE, 499 * MILLISECOND));
+        assertTrue(filter.shouldSend(corners(0), SOURCE_SIZE, 500 * MILLISECOND));
+    }
+
+    @Test
+    public void theNextResultIsSentAfterAReset() {
+        DetectionEventFilter filter = new DetectionEventFilter();
+        filter.setThreshold(5);
+
+        filter.shouldSend(corners(0), SOURCE_SIZE, 0);
+        filter.reset();
+        assertTrue(filter.shouldSend(corners(0), SOURCE_SIZE, 1));
+    }
+
+    private static double[] corners(double offset) {
+        return new double[] {100 + offset, 100, 380 + offset, 100, 380 + offset, 540, 100 + offset, 540};
+    }
+}
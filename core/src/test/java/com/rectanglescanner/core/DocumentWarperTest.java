@@ -0,0 +1,106 @@
+package com.rectanglescanner.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.assertEquals;
+
+public class DocumentWarperTest {
+
+    // A 200x100 document in a 400x300 image, with a dark mark in its top left corner
+    private static final double[] CORNERS = {100, 50, 300, 50, 300, 150, 100, 150};
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void fourPointTransformReturnsTheDocumentUpright() {
+        Mat image = documentImage();
+
+        Mat doc = DocumentWarper.fourPointTransform(image, CORNERS, 0);
+
+        assertEquals(200, doc.cols());
+        assertEquals(100, doc.rows());
+        assertEquals(0, doc.get(5, 5)[0], 1);
+        assertEquals(255, doc.get(95, 195)[0], 1);
+        image.release();
+        doc.release();
+    }
+
+    @Test
+    public void fourPointTransformScalesTheDocumentDownToTheMaxSize() {
+        Mat image = documentImage();
+
+        Mat doc = DocumentWarper.fourPointTransform(image, CORNERS, 50);
+
+        assertEquals(50, doc.cols());
+        assertEquals(25, doc.rows());
+        assertEquals(0, doc.get(1, 1)[0], 1);
+        assertEquals(255, doc.get(23, 48)[0], 1);
+        image.release();
+        doc.release();
+    }
+
+    @Test
+    public void fourPointTransformKeepsADocumentSmallerThanTheMaxSize() {
+        Mat image = documentImage();
+
+        Mat doc = DocumentWarper.fourPointTransform(image, CORNERS, 1000);
+
+        assertEquals(200, doc.cols());
+        assertEquals(100, doc.rows());
+        image.release();
+        doc.release();
+    }
+
+    @Test
+    public void warpPerspectiveInStripsMatchesASingleWarp() {
+        Mat image = new Mat(300, 400, CvType.CV_8UC3);
+        Core.setRNGSeed(20200106);
+        Core.randu(image, 0, 256);
+
+        // A tilted document in the image mapped to a destination rotated 90
+        // degrees counter clockwise, the rotation folded into the transform
+        int width = 180;
+        int height = 250;
+        MatOfPoint2f source = new MatOfPoint2f(new Point(60, 40), new Point(330, 60), new Point(350, 270), new Point(40, 250));
+        MatOfPoint2f destination = new MatOfPoint2f(new Point(0, height - 1), new Point(0, 0), new Point(width - 1, 0), new Point(width - 1, height - 1));
+        Mat m = Imgproc.getPerspectiveTransform(source, destination);
+
+        Mat expected = new Mat(height, width, image.type());
+        Imgproc.warpPerspective(image, expected, m, expected.size());
+
+        // 37 rows per strip: 6 full strips and a last short strip of 28 rows
+        long stripBytes = 37L * width * image.elemSize();
+        Mat strips = new Mat(height, width, image.type());
+        DocumentWarper.warpPerspectiveInStrips(image, strips, m, stripBytes);
+
+        Mat difference = new Mat();
+        Core.absdiff(expected, strips, difference);
+        assertEquals(0, Core.countNonZero(difference.reshape(1)));
+
+        image.release();
+        source.release();
+        destination.release();
+        m.release();
+        expected.release();
+        strips.release();
+        difference.release();
+    }
+
+    private static Mat documentImage() {
+        Mat image = new Mat(300, 400, CvType.CV_8UC1, new Scalar(128));
+        Imgproc.rectangle(image, new Point(100, 50), new Point(300, 150), new Scalar(255), -1);
+        Imgproc.rectangle(image, new Point(100, 50), new Point(140, 70), new Scalar(0), -1);
+        return image;
+    }
+}
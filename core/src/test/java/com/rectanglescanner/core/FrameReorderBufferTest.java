@@ -0,0 +1,72 @@
+package com.rectanglescanner.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameReorderBufferTest {
+
+    @Test
+    public void resultsInOrderAreReleasedRightAway() {
+        FrameReorderBuffer<String> buffer = new FrameReorderBuffer<>(4);
+
+        assertTrue(buffer.add(0, "a"));
+        assertEquals("a", buffer.poll());
+        assertNull(buffer.poll());
+
+        assertTrue(buffer.add(1, "b"));
+        assertEquals("b", buffer.poll());
+        assertEquals(2, buffer.getNextFrameNumber());
+    }
+
+    @Test
+    public void aLaterResultWaitsForTheEarlierFrames() {
+        FrameReorderBuffer<String> buffer = new FrameReorderBuffer<>(4);
+
+        buffer.add(2, "c");
+        buffer.add(1, "b");
+        assertNull(buffer.poll());
+        assertEquals(2, buffer.getHeldResultCount());
+
+        buffer.add(0, "a");
+        assertEquals("a", buffer.poll());
+        assertEquals("b", buffer.poll());
+        assertEquals("c", buffer.poll());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void missingFramesAreGivenUpOnPastTheMaxHeldResults() {
+        FrameReorderBuffer<String> buffer = new FrameReorderBuffer<>(2);
+
+        buffer.add(1, "b");
+        buffer.add(2, "c");
+        assertNull(buffer.poll());
+
+        buffer.add(4, "e");
+        assertEquals("b", buffer.poll());
+        assertEquals("c", buffer.poll());
+        // Back under the max, frame 3 is waited for again
+        assertNull(buffer.poll());
+        assertEquals(3, buffer.getNextFrameNumber());
+
+        // Frame 0 was given up on
+        assertFalse(buffer.add(0, "a"));
+    }
+
+    @Test
+    public void aFrameOnlyTakesOneResult() {
+        FrameReorderBuffer<String> buffer = new FrameReorderBuffer<>(4);
+
+        assertTrue(buffer.add(1, "b"));
+        assertFalse(buffer.add(1, "lost"));
+
+        buffer.add(0, "a");
+        assertEquals("a", buffer.poll());
+        assertEquals("b", buffer.poll());
+        assertFalse(buffer.add(1, "lost"));
+    }
+}
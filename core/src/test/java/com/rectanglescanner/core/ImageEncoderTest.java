@@ -0,0 +1,115 @@
+package com.rectanglescanner.core;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ImageEncoderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void fileExtensionMatchesTheFormat() {
+        ImageEncoder encoder = new ImageEncoder();
+        assertEquals(".jpg", encoder.getFileExtension());
+
+        encoder.setFormat(ImageEncoder.WEBP);
+        assertEquals(".webp", encoder.getFileExtension());
+
+        encoder.setFormat(ImageEncoder.PNG);
+        assertEquals(".png", encoder.getFileExtension());
+
+        encoder.setFormat("gif");
+        assertEquals(ImageEncoder.JPEG, encoder.getFormat());
+        assertEquals(".jpg", encoder.getFileExtension());
+    }
+
+    @Test
+    public void jpegUsesTheQuality() {
+        ImageEncoder encoder = new ImageEncoder();
+        encoder.setQuality(0.7);
+        assertParameters(encoder, Imgcodecs.IMWRITE_JPEG_QUALITY, 70);
+
+        encoder.setQuality(3);
+        assertParameters(encoder, Imgcodecs.IMWRITE_JPEG_QUALITY, 100);
+    }
+
+    @Test
+    public void webpUsesTheQualityOrLossless() {
+        ImageEncoder encoder = new ImageEncoder();
+        encoder.setFormat(ImageEncoder.WEBP);
+        encoder.setQuality(0.8);
+        assertParameters(encoder, Imgcodecs.IMWRITE_WEBP_QUALITY, 80);
+
+        encoder.setLossless(true);
+        assertParameters(encoder, Imgcodecs.IMWRITE_WEBP_QUALITY, 101);
+    }
+
+    @Test
+    public void pngUsesTheCompressionLevel() {
+        ImageEncoder encoder = new ImageEncoder();
+        encoder.setFormat(ImageEncoder.PNG);
+        assertParameters(encoder, Imgcodecs.IMWRITE_PNG_COMPRESSION, 1);
+
+        encoder.setCompressionLevel(12);
+        assertParameters(encoder, Imgcodecs.IMWRITE_PNG_COMPRESSION, 9);
+    }
+
+    @Test
+    public void copyKeepsTheSettingsItWasMadeWith() {
+        ImageEncoder encoder = new ImageEncoder();
+        encoder.setFormat(ImageEncoder.WEBP);
+        encoder.setQuality(0.9);
+        ImageEncoder copy = encoder.copy();
+
+        encoder.setFormat(ImageEncoder.PNG);
+        encoder.setQuality(0.2);
+
+        assertEquals(".webp", copy.getFileExtension());
+        assertParameters(copy, Imgcodecs.IMWRITE_WEBP_QUALITY, 90);
+    }
+
+    @Test
+    public void grayscaleWritesASingleChannelImage() throws Exception {
+        ImageEncoder encoder = new ImageEncoder();
+        encoder.setFormat(ImageEncoder.PNG);
+        encoder.setGrayscale(true);
+        Mat image = new Mat(20, 30, CvType.CV_8UC3, new Scalar(10, 120, 200));
+        String path = new File(folder.getRoot(), "gray" + encoder.getFileExtension()).getPath();
+
+        assertTrue(encoder.write(path, image));
+
+        Mat written = Imgcodecs.imread(path, Imgcodecs.IMREAD_UNCHANGED);
+        assertEquals(1, written.channels());
+        assertEquals(30, written.cols());
+        assertEquals(20, written.rows());
+        // The source is not converted in place
+        assertEquals(3, image.channels());
+        image.release();
+        written.release();
+    }
+
+    private static void assertParameters(ImageEncoder encoder, int... expected) {
+        MatOfInt parameters = encoder.getParameters();
+        assertArrayEquals(expected, parameters.toArray());
+        parameters.release();
+    }
+}
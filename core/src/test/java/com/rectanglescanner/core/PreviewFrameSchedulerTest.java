@@ -0,0 +1,121 @@
+package com.rectanglescanner.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PreviewFrameSchedulerTest {
+
+    private static final long MILLISECOND = 1000000L;
+
+    @Test
+    public void aNewerFrameReplacesTheWaitingFrame() {
+        PreviewFrameScheduler<String> scheduler = new PreviewFrameScheduler<>();
+        byte[] first = new byte[1];
+        byte[] second = new byte[1];
+
+        assertNull(scheduler.offer(first, 1));
+        assertSame(first, scheduler.offer(second, 2));
+
+        PreviewFrameScheduler.FrameTicket ticket = new PreviewFrameScheduler.FrameTicket();
+        assertTrue(scheduler.takeFrame(ticket));
+        assertSame(second, ticket.data);
+        assertFalse(scheduler.takeFrame(ticket));
+    }
+
+    @Test
+    public void framesComingFasterThanTheTargetFrameRateAreDropped() {
+        PreviewFrameScheduler<String> scheduler = new PreviewFrameScheduler<>();
+        scheduler.setTargetFrameRate(10);
+        byte[] first = new byte[1];
+        byte[] tooSoon = new byte[1];
+
+        assertNull(scheduler.offer(first, 1000 * MILLISECOND));
+        assertSame(tooSoon, scheduler.offer(tooSoon, 1050 * MILLISECOND));
+        assertSame(first, scheduler.offer(new byte[1], 1100 * MILLISECOND));
+    }
+
+    @Test
+    public void takenFramesAreNumberedInOrder() {
+        PreviewFrameScheduler<String> scheduler = new PreviewFrameScheduler<>();
+        PreviewFrameScheduler.FrameTicket ticket = new PreviewFrameScheduler.FrameTicket();
+
+        for (int i = 0; i < 3; i++) {
+            scheduler.offer(new byte[1], i);
+            assertTrue(scheduler.takeFrame(ticket));
+            assertEquals(i, ticket.frameNumber);
+        }
+    }
+
+    @Test
+    public void noMoreThanTheMaxActiveWorkersAreClaimed() {
+        PreviewFrameScheduler<String> scheduler = new PreviewFrameScheduler<>();
+        scheduler.setMaxActiveWorkers(2);
+        scheduler.addWorker("a");
+        scheduler.addWorker("b");
+        scheduler.addWorker("c");
+
+        // Nothing to do without a waiting frame
+        assertNull(scheduler.claimIdleWorker());
+
+        scheduler.offer(new byte[1], 1);
+        assertEquals("a", scheduler.claimIdleWorker());
+        assertEquals("b", scheduler.claimIdleWorker());
+        assertNull(scheduler.claimIdleWorker());
+    }
+
+    @Test
+    public void aFinishedWorkerRunsAgainWhileFramesAreWaiting() {
+        PreviewFrameScheduler<String> scheduler = new PreviewFrameScheduler<>();
+        PreviewFrameScheduler.FrameTicket ticket = new PreviewFrameScheduler.FrameTicket();
+        scheduler.addWorker("a");
+
+        scheduler.offer(new byte[1], 1);
+        assertEquals("a", scheduler.claimIdleWorker());
+        scheduler.takeFrame(ticket);
+        scheduler.offer(new byte[1], 2);
+        assertTrue(scheduler.finishFrame("a"));
+
+        scheduler.takeFrame(ticket);
+        assertFalse(scheduler.finishFrame("a"));
+        scheduler.offer(new byte[1], 3);
+        assertEquals("a", scheduler.claimIdleWorker());
+    }
+
+    @Test
+    public void surplusWorkersAreRetiredOnceTheyFinish() {
+        PreviewFrameScheduler<String> scheduler = new PreviewFrameScheduler<>();
+        PreviewFrameScheduler.FrameTicket ticket = new PreviewFrameScheduler.FrameTicket();
+        scheduler.setMaxActiveWorkers(2);
+        scheduler.addWorker("a");
+        scheduler.addWorker("b");
+        scheduler.offer(new byte[1], 1);
+        scheduler.claimIdleWorker();
+        scheduler.takeFrame(ticket);
+        scheduler.offer(new byte[1], 2);
+        scheduler.claimIdleWorker();
+        scheduler.takeFrame(ticket);
+
+        scheduler.setMaxActiveWorkers(1);
+        assertNull(scheduler.removeIdleWorker());
+        assertTrue(scheduler.retireWorker("a"));
+        assertFalse(scheduler.retireWorker("b"));
+        assertEquals(1, scheduler.getWorkerCount());
+    }
+
+    @Test
+    public void clearWorkersReturnsTheWaitingFrame() {
+        PreviewFrameScheduler<String> scheduler = new PreviewFrameScheduler<>();
+        scheduler.addWorker("a");
+        byte[] frame = new byte[1];
+        scheduler.offer(frame, 1);
+
+        assertSame(frame, scheduler.clearWorkers());
+        assertEquals(0, scheduler.getWorkerCount());
+        assertNull(scheduler.clearWorkers());
+    }
+}
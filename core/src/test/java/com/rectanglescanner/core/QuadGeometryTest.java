@@ -0,0 +1,89 @@
+package com.rectanglescanner.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QuadGeometryTest {
+
+    private static final double DELTA = 1e-9;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void sortCornersPicksTheCornersOfAPolygonInAnyOrder() {
+        // Bottom right, top left, a point on the top edge, bottom left, top right
+        double[] polygon = {90, 80, 10, 12, 50, 11, 12, 78, 88, 10};
+        double[] corners = new double[8];
+
+        QuadGeometry.sortCorners(polygon, 5, corners);
+
+        assertArrayEquals(new double[] {10, 12, 88, 10, 90, 80, 12, 78}, corners, DELTA);
+    }
+
+    @Test
+    public void isValidRectangleAcceptsABigUprightRectangle() {
+        double[] corners = {10, 12, 88, 10, 90, 80, 12, 78};
+        assertTrue(QuadGeometry.isValidRectangle(corners, 100));
+    }
+
+    @Test
+    public void isValidRectangleRejectsASmallRectangle() {
+        double[] corners = {10, 10, 15, 10, 15, 15, 10, 15};
+        assertFalse(QuadGeometry.isValidRectangle(corners, 100));
+    }
+
+    @Test
+    public void isValidRectangleRejectsASkewedShape() {
+        // The right edge leans far past the tolerance of a tenth of the width
+        double[] corners = {10, 10, 60, 10, 90, 80, 10, 80};
+        assertFalse(QuadGeometry.isValidRectangle(corners, 100));
+    }
+
+    @Test
+    public void isValidRectangleRejectsADegenerateShape() {
+        double[] corners = {10, 10, 10, 10, 90, 80, 10, 80};
+        assertFalse(QuadGeometry.isValidRectangle(corners, 100));
+    }
+
+    @Test
+    public void rotateFromScreenUndoesRotateForScreen() {
+        double[] original = {0, 0, 639, 0, 639, 479, 0, 479, 123.5, 45.25};
+        int[] rotations = {QuadGeometry.ROTATION_0, QuadGeometry.ROTATION_90, QuadGeometry.ROTATION_180, QuadGeometry.ROTATION_270};
+        for (int rotation : rotations) {
+            double[] points = original.clone();
+            QuadGeometry.rotateForScreen(points, 5, 640, 480, rotation);
+            QuadGeometry.rotateFromScreen(points, 5, 640, 480, rotation);
+            assertArrayEquals("rotation " + rotation, original, points, DELTA);
+        }
+    }
+
+    @Test
+    public void rotateForScreenMovesPointsLikeCoreRotate() {
+        int[] rotations = {QuadGeometry.ROTATION_0, QuadGeometry.ROTATION_180, QuadGeometry.ROTATION_270};
+        int[] rotateCodes = {Core.ROTATE_90_CLOCKWISE, Core.ROTATE_90_COUNTERCLOCKWISE, Core.ROTATE_180};
+        for (int i = 0; i < rotations.length; i++) {
+            Mat image = Mat.zeros(48, 64, CvType.CV_8UC1);
+            image.put(7, 21, 255);
+            Mat rotated = new Mat();
+            Core.rotate(image, rotated, rotateCodes[i]);
+
+            double[] point = {21, 7};
+            QuadGeometry.rotateForScreen(point, 1, 64, 48, rotations[i]);
+
+            assertEquals("rotation " + rotations[i], 255, rotated.get((int) point[1], (int) point[0])[0], DELTA);
+            image.release();
+            rotated.release();
+        }
+    }
+}
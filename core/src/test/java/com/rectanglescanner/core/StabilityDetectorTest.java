@@ -0,0 +1,75 @@
+package com.rectanglescanner.core;
+
+import org.junit.Test;
+import org.opencv.core.Size;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StabilityDetectorTest {
+
+    private static final Size SOURCE_SIZE = new Size(480, 640);
+
+    @Test
+    public void aSteadyRectangleIsStableAfterAFullWindow() {
+        StabilityDetector detector = new StabilityDetector();
+        detector.setWindowSize(3);
+        detector.setTolerance(2);
+
+        assertFalse(detector.update(corners(0), SOURCE_SIZE));
+        assertFalse(detector.update(corners(1), SOURCE_SIZE));
+        assertTrue(detector.update(corners(2), SOURCE_SIZE));
+    }
+
+    @Test
+    public void aMovingRectangleIsNotStable() {
+        StabilityDetector detector = new StabilityDetector();
+        detector.setWindowSize(3);
+        detector.setTolerance(2);
+
+        for (int i = 0; i < 6; i++) {
+            assertFalse(detector.update(corners(i * 20), SOURCE_SIZE));
+        }
+    }
+
+    @Test
+    public void aStableRectangleIsOnlyReportedOnceUntilItIsLost() {
+        StabilityDetector detector = new StabilityDetector();
+        detector.setWindowSize(2);
+
+        detector.update(corners(0), SOURCE_SIZE);
+        assertTrue(detector.update(corners(0), SOURCE_SIZE));
+        for (int i = 0; i < 4; i++) {
+            assertFalse(detector.update(corners(0), SOURCE_SIZE));
+        }
+
+        detector.update(null, null);
+        detector.update(corners(0), SOURCE_SIZE);
+        assertTrue(detector.update(corners(0), SOURCE_SIZE));
+    }
+
+    @Test
+    public void anInterruptionStartsTheWindowOver() {
+        StabilityDetector detector = new StabilityDetector();
+        detector.setWindowSize(2);
+
+        detector.update(corners(0), SOURCE_SIZE);
+        detector.interrupt();
+        assertFalse(detector.update(corners(0), SOURCE_SIZE));
+        assertTrue(detector.update(corners(0), SOURCE_SIZE));
+    }
+
+    @Test
+    public void aNewSourceSizeStartsTheWindowOver() {
+        StabilityDetector detector = new StabilityDetector();
+        detector.setWindowSize(2);
+
+        detector.update(corners(0), SOURCE_SIZE);
+        assertFalse(detector.update(corners(0), new Size(640, 480)));
+        assertTrue(detector.update(corners(0), new Size(640, 480)));
+    }
+
+    private static double[] corners(double offset) {
+        return new double[] {100 + offset, 100, 380 + offset, 100, 380 + offset, 540, 100 + offset, 540};
+    }
+}
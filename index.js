@@ -2,12 +2,15 @@ import Scanner from './src/Scanner';
 import RectangleOverlay from './src/RectangleOverlay';
 import Filters from './src/Filters';
 import FlashAnimation from './src/FlashAnimation';
+import { processImages, cancelProcessImages } from './src/BatchProcessor';
 
 export default Scanner;
 export {
   RectangleOverlay,
   Filters,
   FlashAnimation,
+  processImages,
+  cancelProcessImages,
 };
 
 export const CACHE_FOLDER_NAME = 'RNRectangleScanner';
@@ -0,0 +1,50 @@
+import { DeviceEventEmitter, NativeModules } from 'react-native';
+
+const CameraManager = NativeModules.RNRectangleScannerManager || {};
+const BATCH_RESULT_EVENT = 'RNRectangleScannerBatchResult';
+let lastBatchNumber = 0;
+
+// Batch images are upright, so the flat corners are the top left, top right,
+// bottom right and bottom left of the image.
+const rectangleFromCorners = (corners, width, height) => {
+  if (!corners) return false;
+  return {
+    topLeft: { x: corners[0], y: corners[1] },
+    topRight: { x: corners[2], y: corners[3] },
+    bottomRight: { x: corners[4], y: corners[5] },
+    bottomLeft: { x: corners[6], y: corners[7] },
+    dimensions: { width, height },
+  };
+};
+
+// ANDROID ONLY: Detects, crops, filters and caches the documents in images
+// that are already on the device. onResult is called for each image as soon
+// as it is done (not in order) and the promise resolves once the batch is done.
+export const processImages = (uris, options = {}, onResult) => {
+  if (!CameraManager.processImages) {
+    return Promise.reject(new Error('processImages is not supported on this platform'));
+  }
+
+  lastBatchNumber += 1;
+  const batchId = options.batchId || `batch-${lastBatchNumber}`;
+  const subscription = DeviceEventEmitter.addListener(BATCH_RESULT_EVENT, (event) => {
+    if (event.batchId !== batchId || !onResult) return;
+    const {
+      corners, width, height, ...rest
+    } = event;
+    onResult({ ...rest, detectedRectangle: rectangleFromCorners(corners, width, height) });
+  });
+
+  return CameraManager.processImages(uris, { ...options, batchId }).then((summary) => {
+    subscription.remove();
+    return summary;
+  }, (error) => {
+    subscription.remove();
+    throw error;
+  });
+};
+
+// Stops a batch from starting more images. The images being processed still finish.
+export const cancelProcessImages = (batchId) => {
+  if (CameraManager.cancelProcessImages) CameraManager.cancelProcessImages(batchId);
+};
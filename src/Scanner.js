@@ -10,11 +10,48 @@ import {
 const RNRectangleScanner = requireNativeComponent('RNRectangleScanner');
 const CameraManager = NativeModules.RNRectangleScannerManager || {};
 
+// Android sends the detected corners as a flat array of x, y pairs (top left,
+// top right, bottom right and bottom left of the camera image) with the image
+// size. This turns it into the same detectedRectangle object iOS sends.
+const detectionFromCorners = ({ corners, width, height, ...rest }) => {
+  if (!corners) return { ...rest, detectedRectangle: false };
+  return {
+    ...rest,
+    detectedRectangle: {
+      topRight: { x: corners[0], y: corners[1] },
+      bottomRight: { x: corners[2], y: corners[3] },
+      bottomLeft: { x: corners[4], y: corners[5] },
+      topLeft: { x: corners[6], y: corners[7] },
+      dimensions: { width, height },
+    },
+  };
+};
+
 class Scanner extends React.Component {
   static propTypes = {
     onPictureTaken: PropTypes.func,
     onPictureProcessed: PropTypes.func,
     capturedQuality: PropTypes.number,
+    outputFormat: PropTypes.oneOf(['jpeg', 'webp', 'png']),
+    outputLossless: PropTypes.bool,
+    outputCompressionLevel: PropTypes.number,
+    outputGrayscale: PropTypes.bool,
+    croppedImageMaxSize: PropTypes.number,
+    initialImageMaxSize: PropTypes.number,
+    detectionResolution: PropTypes.number,
+    detectionFrameRate: PropTypes.number,
+    detectionThreads: PropTypes.number,
+    enableRectangleTracking: PropTypes.bool,
+    enableRegionDetection: PropTypes.bool,
+    contourRetrievalMode: PropTypes.oneOf(['external', 'list', 'tree']),
+    detectionEventThreshold: PropTypes.number,
+    detectionEventHeartbeat: PropTypes.number,
+    autoCapture: PropTypes.bool,
+    autoCaptureFrameCount: PropTypes.number,
+    autoCaptureTolerance: PropTypes.number,
+    minimumSharpness: PropTypes.number,
+    pipelineMetricsInterval: PropTypes.number,
+    onPipelineMetrics: PropTypes.func,
     onDeviceSetup: PropTypes.func,
     onRectangleDetected: PropTypes.func,
     onTorchChanged: PropTypes.func,
@@ -34,6 +71,7 @@ class Scanner extends React.Component {
     onDeviceSetup: null,
     onRectangleDetected: null,
     onErrorProcessingImage: null,
+    onPipelineMetrics: null,
     capturedQuality: 0.5,
     androidPermission: {
       title: 'Permission to Access the Camera?',
@@ -84,7 +122,9 @@ class Scanner extends React.Component {
   sendOnRectangleDetectedEvent = (event) => {
     if (!this.props.onRectangleDetected) return null;
     let detectionPayload = event.nativeEvent;
-    if (detectionPayload && detectionPayload.detectedRectangle === 0) {
+    if (detectionPayload && 'corners' in detectionPayload) {
+      detectionPayload = detectionFromCorners(detectionPayload);
+    } else if (detectionPayload && detectionPayload.detectedRectangle === 0) {
       detectionPayload = {
         ...detectionPayload,
         detectedRectangle: false,
@@ -93,6 +133,11 @@ class Scanner extends React.Component {
     return this.props.onRectangleDetected(detectionPayload);
   }
 
+  sendOnPipelineMetricsEvent = (event) => {
+    if (!this.props.onPipelineMetrics) return null;
+    return this.props.onPipelineMetrics(event.nativeEvent);
+  }
+
   sendOnDeviceSetupEvent = (event) => {
     if (!this.props.onDeviceSetup) return null;
     return this.props.onDeviceSetup(event.nativeEvent);
@@ -146,6 +191,23 @@ class Scanner extends React.Component {
   // eslint-disable-next-line
   focus() { CameraManager.focus(); }
 
+  // eslint-disable-next-line
+  getMemoryUsage() {
+    if (!CameraManager.getMemoryUsage) return Promise.resolve(null);
+    return CameraManager.getMemoryUsage();
+  }
+
+  // eslint-disable-next-line
+  getPipelineMetrics() {
+    if (!CameraManager.getPipelineMetrics) return Promise.resolve(null);
+    return CameraManager.getPipelineMetrics();
+  }
+
+  // eslint-disable-next-line
+  resetPipelineMetrics() {
+    if (CameraManager.resetPipelineMetrics) CameraManager.resetPipelineMetrics();
+  }
+
   render() {
     return (
       <RNRectangleScanner
@@ -156,6 +218,7 @@ class Scanner extends React.Component {
         onRectangleDetected={this.sendOnRectangleDetectedEvent}
         onDeviceSetup={this.sendOnDeviceSetupEvent}
         onTorchChanged={this.sendOnTorchChangedEvent}
+        onPipelineMetrics={this.sendOnPipelineMetricsEvent}
         capturedQuality={this.getImageQuality()}
       />
     );
@@ -6,6 +6,8 @@ declare module 'react-native-rectangle-scanner' {
   export interface PictureCallbackProps {
     croppedImage: string,
     initialImage: string,
+    processedImage?: 'croppedImage' | 'initialImage',
+    complete?: boolean,
   }
 
   export interface DeviceSetupCallbackProps {
@@ -52,12 +54,32 @@ declare module 'react-native-rectangle-scanner' {
     onPictureTaken?: (args: PictureCallbackProps) => void,
     onPictureProcessed?: (args: PictureCallbackProps) => void,
     onDeviceSetup?: (args: DeviceSetupCallbackProps) => void,
-    onRectangleDetected?: (args: { detectedRectangle: DetectedRectangle }) => void,
+    onRectangleDetected?: (args: { detectedRectangle: DetectedRectangle, sharpness?: number }) => void,
     onTorchChanged?: (args: TorchCallbackProps) => void,
     onErrorProcessingImage?: (args: PictureCallbackProps) => void,
     filterId?: number,
     enableTorch?: boolean,
     capturedQuality?: number,
+    outputFormat?: 'jpeg' | 'webp' | 'png',
+    outputLossless?: boolean,
+    outputCompressionLevel?: number,
+    outputGrayscale?: boolean,
+    croppedImageMaxSize?: number,
+    initialImageMaxSize?: number,
+    detectionResolution?: number,
+    detectionFrameRate?: number,
+    detectionThreads?: number,
+    enableRectangleTracking?: boolean,
+    enableRegionDetection?: boolean,
+    contourRetrievalMode?: 'external' | 'list' | 'tree',
+    detectionEventThreshold?: number,
+    detectionEventHeartbeat?: number,
+    autoCapture?: boolean,
+    autoCaptureFrameCount?: number,
+    autoCaptureTolerance?: number,
+    minimumSharpness?: number,
+    pipelineMetricsInterval?: number,
+    onPipelineMetrics?: (metrics: object) => void,
     styles?: object,
     androidPermission?: AndroidPermissionObject | boolean,
   }
@@ -82,6 +104,34 @@ declare module 'react-native-rectangle-scanner' {
     overlayFlashOpacity: Animated.Value,
   }
 
+  export interface BatchOptions {
+    batchId?: string,
+    filterId?: number,
+    capturedQuality?: number,
+    outputFormat?: 'jpeg' | 'webp' | 'png',
+    outputLossless?: boolean,
+    outputCompressionLevel?: number,
+    outputGrayscale?: boolean,
+    detectionResolution?: number,
+    parallelism?: number,
+  }
+
+  export interface BatchResult {
+    batchId: string,
+    index: number,
+    initialImage: string,
+    croppedImage: string | null,
+    detectedRectangle: DetectedRectangle | false,
+    error: string | null,
+  }
+
+  export interface BatchSummary {
+    batchId: string,
+    count: number,
+    failedCount: number,
+    cancelled: boolean,
+  }
+
   const Scanner: ComponentClass<ScannerComponentProps>;
 
   export const RectangleOverlay: ComponentClass<RectangleOverlayComponentProps>;
@@ -95,5 +145,8 @@ declare module 'react-native-rectangle-scanner' {
     PLATFORM_DEFAULT_FILTER_ID: number,
   }
 
+  export function processImages(uris: string[], options?: BatchOptions, onResult?: (result: BatchResult) => void): Promise<BatchSummary>;
+  export function cancelProcessImages(batchId: string): void;
+
   export default Scanner;
 }